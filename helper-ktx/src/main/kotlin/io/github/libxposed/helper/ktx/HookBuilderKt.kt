@@ -9,6 +9,7 @@ import dalvik.system.BaseDexClassLoader
 import io.github.libxposed.api.XposedInterface
 import io.github.libxposed.helper.HookBuilder
 import io.github.libxposed.helper.HookBuilder.*
+import java.io.File
 import java.io.InputStream
 import java.io.OutputStream
 import java.lang.reflect.Constructor
@@ -625,6 +626,13 @@ class MethodMatchKt @PublishedApi internal constructor(match: MethodMatch) :
 
     override fun newSelf(match: MethodMatch) = MethodMatchKt(match)
     override fun newMatcher(match: MethodMatcher) = MethodMatcherKt(match)
+
+    inline fun onInvoker(crossinline handler: DummyHooker.(MethodInvoker) -> Unit): MethodMatchKt {
+        match.onInvoker {
+            DummyHooker.handler(it)
+        }
+        return this
+    }
 }
 
 class ConstructorMatchKt @PublishedApi internal constructor(match: ConstructorMatch) :
@@ -633,6 +641,13 @@ class ConstructorMatchKt @PublishedApi internal constructor(match: ConstructorMa
     ) {
     override fun newSelf(match: ConstructorMatch) = ConstructorMatchKt(match)
     override fun newMatcher(match: ConstructorMatcher) = ConstructorMatcherKt(match)
+
+    inline fun onInvoker(crossinline handler: DummyHooker.(ConstructorInvoker) -> Unit): ConstructorMatchKt {
+        match.onInvoker {
+            DummyHooker.handler(it)
+        }
+        return this
+    }
 }
 
 class FieldMatchKt @PublishedApi internal constructor(match: FieldMatch) :
@@ -642,6 +657,13 @@ class FieldMatchKt @PublishedApi internal constructor(match: FieldMatch) :
 
     override fun newSelf(match: FieldMatch) = FieldMatchKt(match)
     override fun newMatcher(match: FieldMatcher) = FieldMatcherKt(match)
+
+    inline fun onAccessor(crossinline handler: DummyHooker.(FieldAccessor) -> Unit): FieldMatchKt {
+        match.onAccessor {
+            DummyHooker.handler(it)
+        }
+        return this
+    }
 }
 
 class StringMatchKt @PublishedApi internal constructor(match: StringMatch) :
@@ -894,6 +916,16 @@ class HookBuilderKt(@PublishedApi internal val builder: HookBuilder) {
             }
         }
 
+    var missListener: (String, String) -> Unit
+        @Deprecated(
+            "Write only", level = DeprecationLevel.HIDDEN
+        ) inline get() = wo
+        inline set(crossinline value) {
+            builder.setMissListener { key, reason ->
+                value(key, reason)
+            }
+        }
+
     @DexAnalysis
     var forceDexAnalysis: Boolean
         @Deprecated(
@@ -935,6 +967,14 @@ class HookBuilderKt(@PublishedApi internal val builder: HookBuilder) {
             builder.setCacheOutputStream(value)
         }
 
+    var sharedCacheFile: File
+        @Deprecated(
+            "Write only", level = DeprecationLevel.HIDDEN
+        ) inline get() = wo
+        inline set(value) {
+            builder.setSharedCacheFile(value)
+        }
+
     var cacheChecker: (Map<String, Any>) -> Boolean
         @Deprecated(
             "Write only", level = DeprecationLevel.HIDDEN
@@ -945,6 +985,36 @@ class HookBuilderKt(@PublishedApi internal val builder: HookBuilder) {
             }
         }
 
+    fun cacheRetention(maxVersions: Int, maxBytes: Long) {
+        builder.setCacheRetention(maxVersions, maxBytes)
+    }
+
+    fun memberScanPrefixes(vararg prefixes: String) {
+        builder.setMemberScanPrefixes(*prefixes)
+    }
+
+    fun sourcePaths(vararg sourcePaths: String) {
+        builder.setSourcePaths(*sourcePaths)
+    }
+
+    var optimisticCache: Boolean
+        @Deprecated(
+            "Write only", level = DeprecationLevel.HIDDEN
+        ) inline get() = wo
+        inline set(value) {
+            builder.setOptimisticCache(value)
+        }
+
+    var cacheRevalidationListener: (String) -> Unit
+        @Deprecated(
+            "Write only", level = DeprecationLevel.HIDDEN
+        ) inline get() = wo
+        inline set(crossinline value) {
+            builder.setCacheRevalidationListener {
+                value(it)
+            }
+        }
+
     inline fun methods(crossinline init: MethodMatcherKt.() -> Unit) =
         MethodLazySequenceKt(builder.methods {
             MethodMatcherKt(it).init()
@@ -999,6 +1069,13 @@ class HookBuilderKt(@PublishedApi internal val builder: HookBuilder) {
         inline get() = StringMatchKt(builder.prefix(this))
     val String.firstPrefix: StringMatchKt
         inline get() = StringMatchKt(builder.firstPrefix(this))
+    val String.samePackage: StringMatchKt
+        inline get() = StringMatchKt(builder.samePackage(this))
+
+    fun anyPrefix(vararg prefixes: String) = StringMatchKt(builder.anyPrefix(*prefixes))
+
+    fun packageGlob(vararg globs: String) = StringMatchKt(builder.packageGlob(*globs))
+
     val String.exactClass: ClassMatchKt
         inline get() = ClassMatchKt(builder.exactClass(this))
     val String.exactMethod: MethodMatchKt
@@ -37,6 +37,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_22
         targetCompatibility = JavaVersion.VERSION_22
     }
+
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 publishing {
@@ -92,4 +96,6 @@ dependencies {
     compileOnly("androidx.annotation:annotation-experimental:1.3.0")
     compileOnly("androidx.annotation:annotation:1.5.0")
     compileOnly("io.github.libxposed:api:100")
+    testImplementation("io.github.libxposed:api:100")
+    testImplementation("junit:junit:4.13.2")
 }
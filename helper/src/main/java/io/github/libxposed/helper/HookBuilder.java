@@ -8,6 +8,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.annotation.RequiresOptIn;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.ElementType;
@@ -29,12 +30,21 @@ import io.github.libxposed.api.XposedInterface;
 public interface HookBuilder {
 
     @NonNull
-    static Future<?> buildHooks(@NonNull XposedInterface ctx, @NonNull BaseDexClassLoader classLoader, @NonNull String sourcePath, Consumer<HookBuilder> consumer) {
+    static Future<BuildResult> buildHooks(@NonNull XposedInterface ctx, @NonNull BaseDexClassLoader classLoader, @NonNull String sourcePath, Consumer<HookBuilder> consumer) {
         var builder = new HookBuilderImpl(ctx, classLoader, sourcePath);
         consumer.accept(builder);
         return builder.build();
     }
 
+    // sizes the reflection caches shared by all builders of the process, per class loader;
+    // applies to existing caches and to those created later
+    static void setReflectionCacheLimits(int strongEntries, int negativeEntries) {
+        if (strongEntries < 0 || negativeEntries < 0) {
+            throw new IllegalArgumentException("limits must not be negative");
+        }
+        Reflector.setCacheLimits(strongEntries, negativeEntries);
+    }
+
     @DexAnalysis
     @NonNull
     HookBuilder setForceDexAnalysis(boolean forceDexAnalysis);
@@ -54,9 +64,32 @@ public interface HookBuilder {
     @NonNull
     HookBuilder setCacheOutputStream(@NonNull OutputStream cacheOutputStream);
 
+    @NonNull
+    HookBuilder setSharedCacheFile(@NonNull File sharedCacheFile);
+
+    @NonNull
+    HookBuilder setCacheRetention(int maxVersions, long maxBytes);
+
+    // restricts the classes scanned by member matchers without declaring class when not using dex analysis
+    @NonNull
+    HookBuilder setMemberScanPrefixes(@NonNull String... prefixes);
+
+    // apks or dex files to scan instead of the ones found behind the class loader, in lookup order
+    @NonNull
+    HookBuilder setSourcePaths(@NonNull String... sourcePaths);
+
+    @NonNull
+    HookBuilder setOptimisticCache(boolean optimisticCache);
+
+    @NonNull
+    HookBuilder setCacheRevalidationListener(@NonNull Consumer<String> listener);
+
     @NonNull
     HookBuilder setExceptionHandler(@NonNull Predicate<Throwable> handler);
 
+    @NonNull
+    HookBuilder setMissListener(@NonNull BiConsumer<String, String> listener);
+
     @NonNull
     MethodLazySequence methods(@NonNull Consumer<MethodMatcher> matcher);
 
@@ -90,6 +123,16 @@ public interface HookBuilder {
     @NonNull
     StringMatch firstPrefix(@NonNull String prefix);
 
+    @NonNull
+    StringMatch anyPrefix(@NonNull String... prefixes);
+
+    // `*` matches one package segment and `**` any number of them
+    @NonNull
+    StringMatch packageGlob(@NonNull String... globs);
+
+    @NonNull
+    StringMatch samePackage(@NonNull String className);
+
     @NonNull
     ClassMatch exactClass(@NonNull String name);
 
@@ -146,6 +189,111 @@ public interface HookBuilder {
         boolean test(@NonNull T t);
     }
 
+    @FunctionalInterface
+    interface MethodInvoker {
+        @Nullable
+        Object invoke(@Nullable Object thisObject, @Nullable Object... args) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface ConstructorInvoker {
+        @NonNull
+        Object newInstance(@Nullable Object... args) throws Throwable;
+    }
+
+    interface FieldAccessor {
+        @Nullable
+        Object get(@Nullable Object thisObject);
+
+        void set(@Nullable Object thisObject, @Nullable Object value);
+
+        boolean getBoolean(@Nullable Object thisObject);
+
+        void setBoolean(@Nullable Object thisObject, boolean value);
+
+        byte getByte(@Nullable Object thisObject);
+
+        void setByte(@Nullable Object thisObject, byte value);
+
+        char getChar(@Nullable Object thisObject);
+
+        void setChar(@Nullable Object thisObject, char value);
+
+        short getShort(@Nullable Object thisObject);
+
+        void setShort(@Nullable Object thisObject, short value);
+
+        int getInt(@Nullable Object thisObject);
+
+        void setInt(@Nullable Object thisObject, int value);
+
+        long getLong(@Nullable Object thisObject);
+
+        void setLong(@Nullable Object thisObject, long value);
+
+        float getFloat(@Nullable Object thisObject);
+
+        void setFloat(@Nullable Object thisObject, float value);
+
+        double getDouble(@Nullable Object thisObject);
+
+        void setDouble(@Nullable Object thisObject, double value);
+    }
+
+    interface BuildResult {
+        // counted per class loader, not per build: lookups of other builders on the same
+        // class loader running at the same time are included
+        @NonNull
+        ReflectionStats getReflectionStats();
+    }
+
+    interface ReflectionStats {
+        @NonNull
+        CacheStats getClassCache();
+
+        @NonNull
+        CacheStats getMethodCache();
+
+        @NonNull
+        CacheStats getFieldCache();
+
+        @NonNull
+        CacheStats getConstructorCache();
+
+        @NonNull
+        LatencyHistogram getForNameLatency();
+
+        @NonNull
+        LatencyHistogram getDeclaredMethodLatency();
+
+        @NonNull
+        LatencyHistogram getDeclaredFieldLatency();
+
+        @NonNull
+        LatencyHistogram getDeclaredConstructorLatency();
+    }
+
+    interface CacheStats {
+        long getHits();
+
+        long getMisses();
+
+        long getNegativeHits();
+
+        // weakly held values cleared by gc, dropped with their keys and resolved again on the next lookup
+        long getWeakClears();
+    }
+
+    interface LatencyHistogram {
+        long getCount();
+
+        long getTotalNanos();
+
+        // bucket i counts durations in [2^i, 2^(i+1)) nanoseconds
+        @NonNull
+        long[] getBuckets();
+    }
+
     @RequiresOptIn(level = RequiresOptIn.Level.ERROR)
     @Retention(RetentionPolicy.CLASS)
     @Target({ElementType.METHOD})
@@ -240,6 +388,7 @@ public interface HookBuilder {
         @NonNull
         Self setIsSynthetic(boolean isSynthetic);
 
+        // private members of supertypes are not inherited and never included; constructors ignore both flags
         @NonNull
         Self setIncludeSuper(boolean includeSuper);
 
@@ -434,14 +583,22 @@ public interface HookBuilder {
     interface MethodMatch extends ExecutableMatch<MethodMatch, Method, MethodMatcher> {
         @NonNull
         ClassMatch getReturnType();
+
+        @NonNull
+        MethodMatch onInvoker(@NonNull Consumer<MethodInvoker> consumer);
     }
 
     interface ConstructorMatch extends ExecutableMatch<ConstructorMatch, Constructor<?>, ConstructorMatcher> {
+        @NonNull
+        ConstructorMatch onInvoker(@NonNull Consumer<ConstructorInvoker> consumer);
     }
 
     interface FieldMatch extends MemberMatch<FieldMatch, Field, FieldMatcher> {
         @NonNull
         ClassMatch getType();
+
+        @NonNull
+        FieldMatch onAccessor(@NonNull Consumer<FieldAccessor> consumer);
     }
 
     interface StringMatch extends BaseMatch<StringMatch, String> {
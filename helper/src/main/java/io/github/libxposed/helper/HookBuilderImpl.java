@@ -11,10 +11,17 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
 import java.io.OutputStream;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Array;
@@ -33,12 +40,14 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -49,6 +58,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.ZipFile;
@@ -62,6 +72,7 @@ import io.github.libxposed.api.utils.DexParser;
 @SuppressLint("SoonBlockedPrivateApi")
 @SuppressWarnings({"unused", "FieldCanBeLocal", "FieldMayBeFinal", "JavaReflectionMemberAccess"})
 final class HookBuilderImpl implements HookBuilder {
+    private static final int CLASS_CHUNK_SIZE = 1024;
     @NonNull
     private final XposedInterface ctx;
     @NonNull
@@ -70,6 +81,8 @@ final class HookBuilderImpl implements HookBuilder {
     private final String sourcePath;
     @NonNull
     private final Reflector reflector;
+    // the reflector is shared, so a build reports the difference from this snapshot
+    private final ReflectionStatsImpl reflectionBase;
     @NonNull
     private final ConcurrentLinkedQueue<ClassMatcherImpl> rootClassMatchers = new ConcurrentLinkedQueue<>();
     @NonNull
@@ -81,6 +94,9 @@ final class HookBuilderImpl implements HookBuilder {
     @SuppressWarnings("ComparatorCombinators")
     @NonNull
     private final SortedSet<StringMatchImpl> stringMatches = new ConcurrentSkipListSet<>((o1, o2) -> o1.matcher.pattern.compareTo(o2.matcher.pattern));
+    // anyPrefix and packageGlob matches, looked up among dex strings one by one
+    @NonNull
+    private final ConcurrentLinkedQueue<StringMatchImpl> multiStringMatches = new ConcurrentLinkedQueue<>();
     @NonNull
     private final HashMap<LazyBind, AtomicInteger> binds = new HashMap<>();
     @NonNull
@@ -106,11 +122,33 @@ final class HookBuilderImpl implements HookBuilder {
     @Nullable
     private Predicate<Throwable> exceptionHandler = null;
     @Nullable
+    private BiConsumer<String, String> missListener = null;
+    @Nullable
     private Predicate<Map<String, Object>> cacheChecker = null;
     @Nullable
     private InputStream cacheInputStream = null;
     @Nullable
     private OutputStream cacheOutputStream = null;
+    @Nullable
+    private File sharedCacheFile = null;
+    @Nullable
+    private SharedCacheFile sharedCache = null;
+    private int cacheRetention = 4;
+    private long cacheRetentionBytes = 1 << 20;
+    @NonNull
+    private List<byte[]> matchCacheVersions = Collections.emptyList();
+    private int matchCacheVersion = -1;
+    private boolean optimisticCache = false;
+    @Nullable
+    private Consumer<String> cacheRevalidationListener = null;
+    @NonNull
+    private final List<ReflectMatcherImpl<?, ?, ?, ?, ?>> hydratedMatchers = new ArrayList<>();
+    @NonNull
+    private final List<ReflectMatchImpl<?, ?, ?, ?, ?, ?>> hydratedMatches = new ArrayList<>();
+    @NonNull
+    private final HashMap<String, Integer> implicitKeyCounts = new HashMap<>();
+    // set while results are hydrated from the match cache, so the callbacks they queue are known
+    private volatile boolean hydrating = false;
     private boolean dexAnalysis = false;
     private boolean forceDexAnalysis = false;
     private boolean includeAnnotations = false;
@@ -124,12 +162,49 @@ final class HookBuilderImpl implements HookBuilder {
     private Handler callbackHandler = null;
     @Nullable
     private MatchCache matchCache = null;
+    @Nullable
+    private String[] memberScanPrefixes = null;
+    // every apk or dex file to scan in class loader order, with splits behind the base apk
+    @Nullable
+    private volatile String[] sourcePaths = null;
+    // dex files already opened by the class loader, by path, they list their classes without reading the dex
+    @Nullable
+    private volatile Map<String, Object> loaderDexFiles = null;
+    @NonNull
+    private volatile TreeSetView<String> allClassNames = TreeSetView.ofSorted(new String[0]);
+    private volatile boolean scheduling = false;
+    // whether any class matcher checks its superclass or interfaces, so class headers are worth keeping
+    private volatile boolean needClassHeaders = false;
+    // class name to its superclass name followed by its interface names, read from the dex class_defs
+    @NonNull
+    private volatile Map<String, String[]> classHeaders = Collections.emptyMap();
+    // package trie of all class names, built on first use by a package glob
+    @NonNull
+    private final AtomicReference<FutureTask<PackageIndex>> packageIndex = new AtomicReference<>(null);
+    // member name to members of the scanned classes, built on first use by a member matcher
+    // without declaring class in class-loader mode
+    @NonNull
+    private final AtomicReference<FutureTask<List<Class<?>>>> scannedClasses = new AtomicReference<>(null);
+    // declared members per class for this build, shared by all member matchers and the match cache
+    @NonNull
+    private final MemberTables<Field> fieldTables = new MemberTables<>(Class::getDeclaredFields);
+    @NonNull
+    private final MemberTables<Method> methodTables = new MemberTables<>(Class::getDeclaredMethods);
+    @NonNull
+    private final MemberTables<Constructor<?>> constructorTables = new MemberTables<>(Class::getDeclaredConstructors);
+    @NonNull
+    private final AtomicReference<FutureTask<TreeMap<String, List<Field>>>> fieldIndex = new AtomicReference<>(null);
+    @NonNull
+    private final AtomicReference<FutureTask<TreeMap<String, List<Method>>>> methodIndex = new AtomicReference<>(null);
+    @NonNull
+    private final AtomicReference<FutureTask<TreeMap<String, List<Constructor<?>>>>> constructorIndex = new AtomicReference<>(null);
 
     HookBuilderImpl(@NonNull XposedInterface ctx, @NonNull BaseDexClassLoader classLoader, @NonNull String sourcePath) {
         this.ctx = ctx;
         this.classLoader = classLoader;
         this.sourcePath = sourcePath;
-        reflector = new Reflector(classLoader);
+        reflector = Reflector.of(classLoader);
+        reflectionBase = reflector.getStats();
     }
 
     @DexAnalysis
@@ -175,6 +250,59 @@ final class HookBuilderImpl implements HookBuilder {
         return this;
     }
 
+    @NonNull
+    @Override
+    public HookBuilder setSharedCacheFile(@NonNull File sharedCacheFile) {
+        this.sharedCacheFile = sharedCacheFile;
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder setCacheRetention(int maxVersions, long maxBytes) {
+        if (maxVersions < 1) {
+            throw new IllegalArgumentException("maxVersions must be positive");
+        }
+        this.cacheRetention = maxVersions;
+        this.cacheRetentionBytes = maxBytes;
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder setMemberScanPrefixes(@NonNull String... prefixes) {
+        var sorted = prefixes.clone();
+        Arrays.sort(sorted);
+        // drop prefixes covered by a shorter one so no class is scanned twice
+        var kept = new ArrayList<String>(sorted.length);
+        for (var prefix : sorted) {
+            if (kept.isEmpty() || !prefix.startsWith(kept.get(kept.size() - 1))) kept.add(prefix);
+        }
+        memberScanPrefixes = kept.toArray(new String[0]);
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder setSourcePaths(@NonNull String... sourcePaths) {
+        this.sourcePaths = sourcePaths.clone();
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder setOptimisticCache(boolean optimisticCache) {
+        this.optimisticCache = optimisticCache;
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder setCacheRevalidationListener(@NonNull Consumer<String> listener) {
+        cacheRevalidationListener = listener;
+        return this;
+    }
+
     @NonNull
     @Override
     public HookBuilder setExceptionHandler(@NonNull Predicate<Throwable> handler) {
@@ -182,12 +310,21 @@ final class HookBuilderImpl implements HookBuilder {
         return this;
     }
 
+    @NonNull
+    @Override
+    public HookBuilder setMissListener(@NonNull BiConsumer<String, String> listener) {
+        missListener = listener;
+        return this;
+    }
+
     @NonNull
     @Override
     public MethodLazySequence methods(@NonNull Consumer<MethodMatcher> matcher) {
         final var m = new MethodMatcherImpl(null, false);
         matcher.accept(m);
-        return m.build();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq;
     }
 
     @NonNull
@@ -195,7 +332,9 @@ final class HookBuilderImpl implements HookBuilder {
     public MethodMatch firstMethod(@NonNull Consumer<MethodMatcher> matcher) {
         final var m = new MethodMatcherImpl(null, true);
         matcher.accept(m);
-        return m.build().first();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq.first();
     }
 
     @NonNull
@@ -203,7 +342,9 @@ final class HookBuilderImpl implements HookBuilder {
     public ConstructorLazySequence constructors(@NonNull Consumer<ConstructorMatcher> matcher) {
         final var m = new ConstructorMatcherImpl(null, false);
         matcher.accept(m);
-        return m.build();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq;
     }
 
     @NonNull
@@ -211,7 +352,9 @@ final class HookBuilderImpl implements HookBuilder {
     public ConstructorMatch firstConstructor(@NonNull Consumer<ConstructorMatcher> matcher) {
         final var m = new ConstructorMatcherImpl(null, true);
         matcher.accept(m);
-        return m.build().first();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq.first();
     }
 
     @NonNull
@@ -219,7 +362,9 @@ final class HookBuilderImpl implements HookBuilder {
     public FieldLazySequence fields(@NonNull Consumer<FieldMatcher> matcher) {
         final var m = new FieldMatcherImpl(null, false);
         matcher.accept(m);
-        return m.build();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq;
     }
 
     @NonNull
@@ -227,7 +372,9 @@ final class HookBuilderImpl implements HookBuilder {
     public FieldMatch firstField(@NonNull Consumer<FieldMatcher> matcher) {
         final var m = new FieldMatcherImpl(null, true);
         matcher.accept(m);
-        return m.build().first();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq.first();
     }
 
     @NonNull
@@ -235,7 +382,9 @@ final class HookBuilderImpl implements HookBuilder {
     public ClassLazySequence classes(@NonNull Consumer<ClassMatcher> matcher) {
         final var m = new ClassMatcherImpl(null, false);
         matcher.accept(m);
-        return m.build();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq;
     }
 
     @NonNull
@@ -243,7 +392,9 @@ final class HookBuilderImpl implements HookBuilder {
     public ClassMatch firstClass(@NonNull Consumer<ClassMatcher> matcher) {
         final var m = new ClassMatcherImpl(null, true);
         matcher.accept(m);
-        return m.build().first();
+        final var seq = m.build();
+        m.setImplicitKey();
+        return seq.first();
     }
 
     @NonNull
@@ -267,6 +418,36 @@ final class HookBuilderImpl implements HookBuilder {
         return m.build();
     }
 
+    @NonNull
+    @Override
+    public StringMatch anyPrefix(@NonNull String... prefixes) {
+        var sorted = prefixes.clone();
+        Arrays.sort(sorted);
+        // a prefix covered by a shorter one adds nothing
+        var collapsed = new ArrayList<String>(sorted.length);
+        for (var prefix : sorted) {
+            if (collapsed.isEmpty() || !prefix.startsWith(collapsed.get(collapsed.size() - 1))) collapsed.add(prefix);
+        }
+        final var m = new StringMatcherImpl(String.join("|", collapsed), false, true, collapsed.toArray(new String[0]), null);
+        return m.build();
+    }
+
+    @NonNull
+    @Override
+    public StringMatch packageGlob(@NonNull String... globs) {
+        final var m = new StringMatcherImpl(String.join("|", globs), false, false, null, globs.clone());
+        return m.build();
+    }
+
+    @NonNull
+    @Override
+    public StringMatch samePackage(@NonNull String className) {
+        var lastDot = className.lastIndexOf('.');
+        var packageName = lastDot < 0 ? "" : className.substring(0, lastDot);
+        final var m = new StringMatcherImpl(packageName, false, false, null, new String[]{packageName});
+        return m.build();
+    }
+
     @NonNull
     @Override
     public ClassMatch exactClass(@NonNull String name) {
@@ -347,42 +528,141 @@ final class HookBuilderImpl implements HookBuilder {
         return m.build(field).first();
     }
 
-    public @NonNull Future<?> build() {
-        dexAnalysis = dexAnalysis || forceDexAnalysis;
-        loadMatchCache();
-
-        var pendingTasks = ((PendingExecutor) matchExecutor).pendingTasks;
+    // implicit cache key of a matcher, derived from the description of its conditions
+    @NonNull
+    private static String implicitKey(@NonNull String structure) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < structure.length(); i++) {
+            hash ^= structure.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return "~" + Long.toHexString(hash);
+    }
 
-        if (executorService == null) {
-            executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    // matchers with the same conditions are told apart by the order they are declared in, so
+    // each keeps its own cache entry
+    @NonNull
+    private String uniqueImplicitKey(@NonNull String structure) {
+        final var key = implicitKey(structure);
+        synchronized (implicitKeyCounts) {
+            final var count = implicitKeyCounts.get(key);
+            implicitKeyCounts.put(key, count == null ? 1 : count + 1);
+            return count == null ? key : key + "#" + count;
         }
-        matchExecutor = SimpleExecutor.of(executorService);
+    }
 
-        for (var task : pendingTasks) {
-            matchExecutor.submit(task);
+    // null if any part cannot be described
+    @Nullable
+    private static String joinStructure(@Nullable Object... parts) {
+        final var sb = new StringBuilder();
+        for (final var part : parts) {
+            if (part == null) return null;
+            sb.append(part).append(';');
         }
-        try {
-            matchExecutor.joinAll();
-        } catch (Throwable e) {
-            if (exceptionHandler != null) {
-                exceptionHandler.test(e);
+        return sb.toString();
+    }
+
+    @Nullable
+    private String structureOf(@Nullable Object dependency) {
+        if (dependency == null) return "-";
+        if (dependency instanceof ReflectMatchImpl) return ((ReflectMatchImpl<?, ?, ?, ?, ?, ?>) dependency).structure;
+        if (dependency instanceof LazySequenceImpl) return ((LazySequenceImpl<?, ?, ?, ?, ?, ?, ?>) dependency).structure;
+        if (dependency instanceof BaseSyntaxImpl) return ((BaseSyntaxImpl<?, ?, ?>) dependency).describe();
+        if (dependency instanceof StringMatchImpl) {
+            final var matcher = ((StringMatchImpl) dependency).matcher;
+            // the kind and matchFirst change what matches, parts are length prefixed as they may hold any separator
+            final String[] parts;
+            final char kind;
+            if (matcher.prefixes != null) {
+                parts = matcher.prefixes;
+                kind = '|';
+            } else if (matcher.globPatterns != null) {
+                parts = matcher.globPatterns;
+                kind = '*';
+            } else {
+                parts = new String[]{matcher.pattern};
+                kind = matcher.matchPrefix ? '^' : '=';
             }
+            final var sb = new StringBuilder().append(kind).append(matcher.matchFirst ? '1' : 'n');
+            for (final var part : parts) {
+                sb.append(part.length()).append(':').append(part);
+            }
+            return sb.toString();
         }
+        return null;
+    }
 
-        pendingTasks = ((PendingExecutor) callbackExecutor).pendingTasks;
+    @Nullable
+    private static String exactStructure(@Nullable Object reflect) {
+        if (reflect instanceof Class<?>) return "exact:" + Reflector.getDescriptor((Class<?>) reflect);
+        if (reflect instanceof Method) return "exact:" + Reflector.getSignature((Method) reflect);
+        if (reflect instanceof Constructor<?>) return "exact:" + Reflector.getSignature((Constructor<?>) reflect);
+        if (reflect instanceof Field) return "exact:" + Reflector.getSignature((Field) reflect);
+        return null;
+    }
+
+    public @NonNull Future<BuildResult> build() {
+        dexAnalysis = dexAnalysis || forceDexAnalysis;
+        openSharedCache();
+        // the shared cache locks must not outlive this build, whatever goes wrong in it
+        try {
+            var pendingTasks = ((PendingExecutor) matchExecutor).pendingTasks;
+
+            if (executorService == null) {
+                executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            }
+            matchExecutor = SimpleExecutor.of(executorService);
 
-        if (callbackHandler != null) {
-            callbackExecutor = SimpleExecutor.of(callbackHandler);
             for (var task : pendingTasks) {
-                callbackExecutor.submit(task);
+                matchExecutor.submit(task);
+            }
+            try {
+                matchExecutor.joinAll();
+            } catch (Throwable e) {
+                if (exceptionHandler != null) {
+                    exceptionHandler.test(e);
+                }
             }
-        }
 
-        if (dexAnalysis) {
-            analysisDex();
-        } else {
-            analysisClassLoader();
+            final var pendingCallbacks = (PendingExecutor) callbackExecutor;
+            pendingTasks = pendingCallbacks.pendingTasks;
+            if (callbackHandler != null) {
+                callbackExecutor = SimpleExecutor.of(callbackHandler);
+            }
+
+            // cached results are trusted for now and get checked in background later, so their
+            // callbacks go out ahead of the analysis, on the callback handler if there is one
+            if (optimisticCache && matchCacheVersion >= 0) {
+                for (var it = pendingTasks.iterator(); it.hasNext(); ) {
+                    var task = it.next();
+                    if (!pendingCallbacks.cachedTasks.contains(task)) continue;
+                    it.remove();
+                    if (callbackHandler != null) {
+                        callbackExecutor.submit(task);
+                    } else {
+                        task.run();
+                    }
+                }
+            }
+
+            if (callbackHandler != null) {
+                for (var task : pendingTasks) {
+                    callbackExecutor.submit(task);
+                }
+            }
+
+            if (dexAnalysis) {
+                analysisDex();
+            } else {
+                analysisClassLoader();
+            }
+            saveMatchCache();
+        } finally {
+            closeSharedCache();
         }
+        final var reflectionStats = reflector.getStats().minus(reflectionBase);
+        final BuildResult result = () -> reflectionStats;
+        revalidateMatchCache();
         return new Future<>() {
             private volatile boolean done = false;
 
@@ -412,7 +692,7 @@ final class HookBuilderImpl implements HookBuilder {
             }
 
             @Override
-            public Object get() throws ExecutionException, InterruptedException {
+            public BuildResult get() throws ExecutionException, InterruptedException {
                 if (callbackHandler != null && callbackHandler.getLooper() == Looper.myLooper()) {
                     throw new InterruptedException("dead lock");
                 }
@@ -425,11 +705,11 @@ final class HookBuilderImpl implements HookBuilder {
                     callbackExecutor.joinAll();
                 }
                 done = true;
-                return null;
+                return result;
             }
 
             @Override
-            public Object get(long timeout, TimeUnit unit) throws ExecutionException, InterruptedException, TimeoutException {
+            public BuildResult get(long timeout, TimeUnit unit) throws ExecutionException, InterruptedException, TimeoutException {
                 var nanos = unit.toNanos(timeout);
                 if (callbackHandler != null && callbackHandler.getLooper() == Looper.myLooper()) {
                     throw new InterruptedException("dead lock");
@@ -448,37 +728,193 @@ final class HookBuilderImpl implements HookBuilder {
                     callbackExecutor.joinAll(unit.convert(nanos - (System.nanoTime() - now), TimeUnit.NANOSECONDS), unit);
                 }
                 done = true;
-                return null;
+                return result;
             }
         };
     }
 
-    private void analysisDex() {
-        DexParser[] parsers;
-        try (var apk = new ZipFile(sourcePath)) {
+    @NonNull
+    private String[] getSourcePaths() {
+        var paths = sourcePaths;
+        if (paths != null) return paths;
+        final var found = new ArrayList<String>();
+        final var canonical = new HashSet<String>();
+        for (var path : getLoaderDexFiles().keySet()) {
+            if (canonical.add(getCanonicalPath(path))) found.add(path);
+        }
+        // the loader may list the source apk under another path, through a symlink or a renamed
+        // install dir, then its own path is what the loader opened
+        if (!canonical.contains(getCanonicalPath(sourcePath))) found.add(0, sourcePath);
+        paths = found.toArray(new String[0]);
+        sourcePaths = paths;
+        return paths;
+    }
+
+    @NonNull
+    private static String getCanonicalPath(@NonNull String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException e) {
+            return new File(path).getAbsolutePath();
+        }
+    }
+
+    @NonNull
+    private Map<String, Object> getLoaderDexFiles() {
+        var dexFiles = loaderDexFiles;
+        if (dexFiles != null) return dexFiles;
+        dexFiles = new LinkedHashMap<>();
+        try {
+            @SuppressWarnings("JavaReflectionMemberAccess") @SuppressLint("DiscouragedPrivateApi") var pathListField = BaseDexClassLoader.class.getDeclaredField("pathList");
+            pathListField.setAccessible(true);
+            final var pathList = pathListField.get(classLoader);
+            if (pathList == null) {
+                throw new IllegalStateException("pathList is null");
+            }
+            final var dexElementsField = pathList.getClass().getDeclaredField("dexElements");
+            dexElementsField.setAccessible(true);
+            final var dexElements = (Object[]) dexElementsField.get(pathList);
+            if (dexElements == null) {
+                throw new IllegalStateException("dexElements is null");
+            }
+            for (final var dexElement : dexElements) {
+                final var dexFileField = dexElement.getClass().getDeclaredField("dexFile");
+                dexFileField.setAccessible(true);
+                final var dexFile = dexFileField.get(dexElement);
+                // resource only elements have no dex file
+                if (dexFile == null) continue;
+                final var name = getElementPath(dexElement);
+                if (name != null && !dexFiles.containsKey(name)) dexFiles.put(name, dexFile);
+            }
+        } catch (Throwable e) {
+            if (exceptionHandler != null) exceptionHandler.test(e);
+        }
+        loaderDexFiles = dexFiles;
+        return dexFiles;
+    }
+
+    // the file of a dex element, `path` since O and `zip` or `file` on older releases
+    @Nullable
+    private static String getElementPath(@NonNull Object dexElement) {
+        for (var fieldName : new String[]{"path", "zip", "file"}) {
+            try {
+                final var field = dexElement.getClass().getDeclaredField(fieldName);
+                field.setAccessible(true);
+                final var file = field.get(dexElement);
+                if (file instanceof File) return ((File) file).getPath();
+            } catch (ReflectiveOperationException ignored) {
+            }
+        }
+        return null;
+    }
+
+    // class names as listed by a dex file of the class loader, for preopted and stripped apks with no dex to read
+    @NonNull
+    private static String[] getEntries(@NonNull Object dexFile) throws ReflectiveOperationException {
+        @SuppressWarnings("unchecked") final var entries = (Enumeration<String>) dexFile.getClass().getMethod("entries").invoke(dexFile);
+        final var names = new ArrayList<String>();
+        if (entries != null) {
+            while (entries.hasMoreElements()) names.add(entries.nextElement());
+        }
+        final var res = names.toArray(new String[0]);
+        Arrays.sort(res);
+        return res;
+    }
+
+    private static boolean hasDexEntries(@NonNull String path) {
+        if (path.endsWith(".dex")) return true;
+        try (var apk = new ZipFile(path)) {
+            return apk.getEntry("classes.dex") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // dexes of all source paths read in parallel, in lookup order so that earlier ones win on duplicates
+    @NonNull
+    private DexParser[] parseDexes(boolean includeAnnotations) throws IOException, ExecutionException, InterruptedException {
+        return parseDexes(getSourcePaths(), includeAnnotations);
+    }
+
+    @NonNull
+    private DexParser[] parseDexes(@NonNull String[] paths, boolean includeAnnotations) throws IOException, ExecutionException, InterruptedException {
+        final var apks = new ArrayList<ZipFile>();
+        try {
             var tasks = new ArrayList<Future<DexParser>>();
-            for (var i = 1; ; ++i) {
-                var dex = apk.getEntry("classes" + (i == 1 ? "" : i) + ".dex");
-                if (dex == null) break;
-                tasks.add(matchExecutor.submit(() -> {
-                    var buf = ByteBuffer.allocateDirect((int) dex.getSize());
-                    try (var in = apk.getInputStream(dex)) {
-                        if (in.read(buf.array()) != buf.capacity()) {
-                            throw new IOException("read dex failed");
+            for (final var path : paths) {
+                if (path.endsWith(".dex")) {
+                    final var file = new File(path);
+                    tasks.add(matchExecutor.submit(() -> {
+                        var buf = ByteBuffer.allocateDirect((int) file.length());
+                        try (var in = new FileInputStream(file)) {
+                            readFully(in, buf);
                         }
-                    }
-                    return ctx.parseDex(buf, false);
-                }));
+                        return ctx.parseDex(buf, includeAnnotations);
+                    }));
+                    continue;
+                }
+                final var apk = new ZipFile(path);
+                apks.add(apk);
+                for (var i = 1; ; ++i) {
+                    var dex = apk.getEntry("classes" + (i == 1 ? "" : i) + ".dex");
+                    if (dex == null) break;
+                    tasks.add(matchExecutor.submit(() -> {
+                        var buf = ByteBuffer.allocateDirect((int) dex.getSize());
+                        try (var in = apk.getInputStream(dex)) {
+                            readFully(in, buf);
+                        }
+                        return ctx.parseDex(buf, includeAnnotations);
+                    }));
+                }
             }
-            parsers = new DexParser[tasks.size()];
+            var parsers = new DexParser[tasks.size()];
             for (var i = 0; i < parsers.length; ++i) {
                 parsers[i] = tasks.get(i).get();
             }
+            return parsers;
+        } finally {
+            for (var apk : apks) {
+                try {
+                    apk.close();
+                } catch (IOException e) {
+                    if (exceptionHandler != null) exceptionHandler.test(e);
+                }
+            }
+        }
+    }
+
+    private static void readFully(@NonNull InputStream in, @NonNull ByteBuffer buf) throws IOException {
+        final var bytes = buf.array();
+        var offset = 0;
+        while (offset < bytes.length) {
+            var read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) throw new IOException("read dex failed");
+            offset += read;
+        }
+    }
+
+    private void closeDexes(@NonNull DexParser[] parsers) {
+        for (var parser : parsers) {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                if (exceptionHandler != null) {
+                    exceptionHandler.test(e);
+                }
+            }
+        }
+    }
+
+    private void analysisDex() {
+        DexParser[] parsers;
+        try {
+            parsers = parseDexes(false);
         } catch (Throwable e) {
             if (exceptionHandler != null) exceptionHandler.test(e);
             return;
         }
         // match strings first
+        final var dexCount = parsers.length;
         for (var d = 0; d < parsers.length; ++d) {
             final int dexId = d;
             final var dex = parsers[dexId];
@@ -517,7 +953,24 @@ final class HookBuilderImpl implements HookBuilder {
                     for (var i = left; i < right; ++i) {
                         arr[i - left] = i;
                     }
-                    AtomicHelper.updateIfNullAndGet(match.dexMatches, () -> new int[length][])[dexId] = arr;
+                    AtomicHelper.updateIfNullAndGet(match.dexMatches, () -> new int[dexCount][])[dexId] = arr;
+                }
+                String[] names = null;
+                PackageIndex packageIndex = null;
+                for (var match : multiStringMatches) {
+                    var matcher = match.matcher;
+                    int[] arr;
+                    if (matcher.prefixes != null) {
+                        arr = findPrefixes(strings, matcher.prefixes);
+                    } else {
+                        // same package walk as class names in class loader mode
+                        if (names == null) {
+                            names = getDottedNames(strings);
+                            packageIndex = newPackageIndex(names);
+                        }
+                        arr = indicesOf(names, packageIndex.find(matcher.globs));
+                    }
+                    AtomicHelper.updateIfNullAndGet(match.dexMatches, () -> new int[dexCount][])[dexId] = arr;
                 }
             });
         }
@@ -558,98 +1011,371 @@ final class HookBuilderImpl implements HookBuilder {
         } catch (Throwable e) {
             if (exceptionHandler != null) exceptionHandler.test(e);
         }
-        for (var parser : parsers) {
+        closeDexes(parsers);
+    }
+
+    // indices of the sorted strings starting with any of the prefixes, which do not cover each other
+    @NonNull
+    private static int[] findPrefixes(@NonNull String[] strings, @NonNull String[] prefixes) {
+        final var ranges = new int[prefixes.length * 2];
+        var total = 0;
+        for (var i = 0; i < prefixes.length; ++i) {
+            var left = Arrays.binarySearch(strings, prefixes[i]);
+            if (left < 0) left = -left - 1;
+            var right = Arrays.binarySearch(strings, left, strings.length, prefixes[i] + Character.MAX_VALUE);
+            if (right < 0) right = -right - 1;
+            ranges[2 * i] = left;
+            ranges[2 * i + 1] = right;
+            total += right - left;
+        }
+        final var res = new int[total];
+        var p = 0;
+        for (var i = 0; i < ranges.length; i += 2) {
+            for (var j = ranges[i]; j < ranges[i + 1]; ++j) res[p++] = j;
+        }
+        // sorted prefixes give ascending ranges
+        return res;
+    }
+
+    // class refs are descriptors, they go by their dotted names so that package globs match them
+    // as they match class names in class loader mode; other strings are taken as they are
+    @NonNull
+    private static String[] getDottedNames(@NonNull String[] strings) {
+        final var names = new String[strings.length];
+        for (var i = 0; i < strings.length; ++i) {
+            final var string = strings[i];
+            final var length = string.length();
+            names[i] = length > 2 && string.charAt(0) == 'L' && string.charAt(length - 1) == ';' ?
+                    string.substring(1, length - 1).replace('/', '.') : string;
+        }
+        return names;
+    }
+
+    @NonNull
+    private static PackageIndex newPackageIndex(@NonNull String[] names) {
+        final var sorted = names.clone();
+        Arrays.sort(sorted);
+        var n = 0;
+        for (var i = 0; i < sorted.length; ++i) {
+            if (n == 0 || !sorted[i].equals(sorted[n - 1])) sorted[n++] = sorted[i];
+        }
+        return new PackageIndex(TreeSetView.ofSorted(sorted, 0, n));
+    }
+
+    // ids of the strings whose names were found, a constant and a class ref may share one
+    @NonNull
+    private static int[] indicesOf(@NonNull String[] names, @NonNull TreeSetView<String> found) {
+        var count = 0;
+        final var hits = new boolean[names.length];
+        for (var i = 0; i < names.length; ++i) {
+            if (found.contains(names[i])) {
+                hits[i] = true;
+                ++count;
+            }
+        }
+        final var res = new int[count];
+        var p = 0;
+        for (var i = 0; i < names.length; ++i) {
+            if (hits[i]) res[p++] = i;
+        }
+        return res;
+    }
+
+    // `*` stands for any run of characters, for names without packages such as member names
+    private static boolean matchesWildcard(@NonNull String pattern, @NonNull String value) {
+        int p = 0, v = 0, star = -1, resume = 0;
+        while (v < value.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                resume = v;
+            } else if (p < pattern.length() && pattern.charAt(p) == value.charAt(v)) {
+                p++;
+                v++;
+            } else if (star >= 0) {
+                p = star + 1;
+                v = ++resume;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') p++;
+        return p == pattern.length();
+    }
+
+    // names of the classes defined by the source paths, read from the class_defs of their dexes; only
+    // paths without any dex entries, like preopted or stripped apks, are listed by the class loader
+    private TreeSetView<String> getAllClassNames() throws IOException, ExecutionException, InterruptedException {
+        final var dexFiles = getLoaderDexFiles();
+        final var parsed = new ArrayList<String>();
+        var tasks = new ArrayList<Future<String[]>>();
+        for (final var path : getSourcePaths()) {
+            final var dexFile = dexFiles.get(path);
+            if (dexFile != null && !hasDexEntries(path)) {
+                tasks.add(matchExecutor.submit(() -> getEntries(dexFile)));
+            } else {
+                parsed.add(path);
+            }
+        }
+        final var parsers = parsed.isEmpty() ? new DexParser[0] : parseDexes(parsed.toArray(new String[0]), false);
+        try {
+            final var headers = new ArrayList<HashMap<String, String[]>>(parsers.length);
+            for (final var dex : parsers) {
+                final var dexHeaders = needClassHeaders ? new HashMap<String, String[]>() : null;
+                headers.add(dexHeaders);
+                tasks.add(matchExecutor.submit(() -> getDefinedClassNames(dex, dexHeaders)));
+            }
+            var views = new ArrayList<TreeSetView<String>>(tasks.size());
+            for (var task : tasks) {
+                views.add(TreeSetView.ofSorted(task.get()));
+            }
+            if (needClassHeaders) {
+                // the class loader takes the first dex defining a class, so earlier dexes overwrite later ones
+                final var merged = new HashMap<String, String[]>();
+                for (var i = headers.size() - 1; i >= 0; --i) merged.putAll(headers.get(i));
+                classHeaders = merged;
+            }
+            // one merge pass over all dexes so that we can have a sorted result and remove duplicates
+            return TreeSetView.mergeAll(views);
+        } finally {
+            closeDexes(parsers);
+        }
+    }
+
+    @NonNull
+    private static String[] getDefinedClassNames(@NonNull DexParser dex, @Nullable HashMap<String, String[]> headers) {
+        final var typeIds = dex.getTypeId();
+        final var typeNames = new String[typeIds.length];
+        final var defined = new boolean[typeIds.length];
+        final int[] count = {0};
+        dex.visitDefinedClasses(new DexParser.ClassVisitor() {
+            @Override
+            public DexParser.MemberVisitor visit(int clazz, int accessFlags, int superClass, @NonNull int[] interfaces, int sourceFile, @NonNull int[] staticFields, @NonNull int[] staticFieldsAccessFlags, @NonNull int[] instanceFields, @NonNull int[] instanceFieldsAccessFlags, @NonNull int[] directMethods, @NonNull int[] directMethodsAccessFlags, @NonNull int[] virtualMethods, @NonNull int[] virtualMethodsAccessFlags, @NonNull int[] annotations) {
+                if (!defined[clazz]) {
+                    defined[clazz] = true;
+                    count[0]++;
+                    if (headers != null) {
+                        final var header = new String[interfaces.length + 1];
+                        header[0] = superClass == DexParser.NO_INDEX ? null : getTypeName(typeIds, typeNames, superClass);
+                        for (var i = 0; i < interfaces.length; ++i) {
+                            header[i + 1] = getTypeName(typeIds, typeNames, interfaces[i]);
+                        }
+                        headers.put(getTypeName(typeIds, typeNames, clazz), header);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean stop() {
+                return false;
+            }
+        });
+        final var names = new String[count[0]];
+        for (int i = 0, n = 0; i < typeIds.length; ++i) {
+            if (!defined[i]) continue;
+            names[n++] = getTypeName(typeIds, typeNames, i);
+        }
+        // type ids are in descriptor order, nearly but not quite name order as `;` sorts after `$`
+        Arrays.sort(names);
+        return names;
+    }
+
+    // class name of a type id, shared by all headers of the dex referring to it
+    @NonNull
+    private static String getTypeName(@NonNull DexParser.TypeId[] typeIds, @NonNull String[] typeNames, int typeId) {
+        var name = typeNames[typeId];
+        if (name == null) {
+            var descriptor = typeIds[typeId].getDescriptor().getString();
+            name = descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+            typeNames[typeId] = name;
+        }
+        return name;
+    }
+
+    private void openSharedCache() {
+        if (sharedCacheFile != null) {
             try {
-                parser.close();
-            } catch (IOException e) {
+                sharedCache = SharedCacheFile.openShared(sharedCacheFile);
+            } catch (Throwable e) {
                 if (exceptionHandler != null) {
                     exceptionHandler.test(e);
                 }
             }
         }
+        var valid = loadMatchCache();
+        // a valid cache is only read, reordering its versions is not worth excluding everyone else
+        if (sharedCache == null || valid) {
+            closeSharedCache();
+            return;
+        }
+        // cache is stale, wait for whoever is writing it and check again
+        try {
+            sharedCache.upgrade();
+        } catch (Throwable e) {
+            if (exceptionHandler != null) {
+                exceptionHandler.test(e);
+            }
+            closeSharedCache();
+            return;
+        }
+        if (loadMatchCache()) closeSharedCache();
     }
 
-    private TreeSetView<String> getAllClassNamesFromClassLoader() throws NoSuchFieldException, IllegalAccessException {
-        TreeSetView<String> res = TreeSetView.ofSorted(new String[0]);
-        @SuppressWarnings("JavaReflectionMemberAccess") @SuppressLint("DiscouragedPrivateApi") var pathListField = BaseDexClassLoader.class.getDeclaredField("pathList");
-        pathListField.setAccessible(true);
-        final var pathList = pathListField.get(classLoader);
-        if (pathList == null) {
-            throw new IllegalStateException("pathList is null");
-        }
-        final var dexElementsField = pathList.getClass().getDeclaredField("dexElements");
-        dexElementsField.setAccessible(true);
-        final var dexElements = (Object[]) dexElementsField.get(pathList);
-        if (dexElements == null) {
-            throw new IllegalStateException("dexElements is null");
+    private void closeSharedCache() {
+        if (sharedCache == null) return;
+        try {
+            sharedCache.close();
+        } catch (Throwable e) {
+            if (exceptionHandler != null) {
+                exceptionHandler.test(e);
+            }
         }
-        for (final var dexElement : dexElements) {
-            final var dexFileField = dexElement.getClass().getDeclaredField("dexFile");
-            dexFileField.setAccessible(true);
-            final var dexFile = dexFileField.get(dexElement);
-            if (dexFile == null) {
-                continue;
+        sharedCache = null;
+    }
+
+    @NonNull
+    private ArrayList<byte[]> readMatchCacheVersions() throws IOException, ClassNotFoundException {
+        var versions = new ArrayList<byte[]>();
+        var input = cacheInputStream;
+        cacheInputStream = null;
+        if (sharedCache != null) {
+            // the shared file takes over, but the stream still belongs to us
+            if (input != null) input.close();
+            input = sharedCache.openInputStream();
+        }
+        if (input == null) return versions;
+        // the shared file is mapped, so versions are read off the mapping without copying the whole file
+        try (var in = input.markSupported() ? input : new BufferedInputStream(input)) {
+            in.mark(Integer.MAX_VALUE);
+            if (in.read() < 0) return versions;
+            in.reset();
+            var head = new ObjectInputStream(in).readObject();
+            if (head instanceof ArrayList) {
+                for (var version : (ArrayList<?>) head) {
+                    if (version instanceof byte[]) versions.add((byte[]) version);
+                }
+            } else {
+                // a single version written before retention was supported
+                in.reset();
+                var bytes = new ByteArrayOutputStream();
+                var buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    bytes.write(buf, 0, n);
+                }
+                versions.add(bytes.toByteArray());
             }
-            final var entriesField = dexFile.getClass().getDeclaredField("entries");
-            entriesField.setAccessible(true);
-            @SuppressWarnings("unchecked") final var entries = (Enumeration<String>) entriesField.get(dexFile);
-            if (entries == null) {
-                continue;
+        }
+        return versions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int findMatchCacheVersion(@NonNull List<byte[]> versions) {
+        for (var i = 0; i < versions.size(); ++i) {
+            try (var in = new ObjectInputStream(new ByteArrayInputStream(versions.get(i)))) {
+                if (isMatchCacheValid((HashMap<String, Object>) in.readObject())) return i;
+            } catch (Throwable e) {
+                if (exceptionHandler != null) {
+                    exceptionHandler.test(e);
+                }
             }
-            // entries are sorted
-            // perform O(N) merge so that we can have a sorted result and remove duplicates
-            res = res.merge(TreeSetView.ofSorted(Collections.list(entries)));
         }
-        return res;
+        return -1;
+    }
+
+    private boolean isMatchCacheValid(@NonNull HashMap<String, Object> info) {
+        if (cacheChecker != null) {
+            return cacheChecker.test(info);
+        }
+        var oldObj = info.get("lastModifyTime");
+        var old = oldObj instanceof Long ? (long) oldObj : 0;
+        // installing or updating a split changes the paths even if the base apk stays
+        // caches written before the paths were recorded only covered the source apk
+        var oldPaths = info.containsKey("sourcePaths") ? info.get("sourcePaths") : new String[]{sourcePath};
+        return old == getLastModified() && oldPaths instanceof String[] && isSamePaths((String[]) oldPaths, getSourcePaths());
+    }
+
+    // the same files, even if one of them is now reached through another path
+    private static boolean isSamePaths(@NonNull String[] a, @NonNull String[] b) {
+        if (a.length != b.length) return false;
+        for (var i = 0; i < a.length; ++i) {
+            if (!a[i].equals(b[i]) && !getCanonicalPath(a[i]).equals(getCanonicalPath(b[i]))) return false;
+        }
+        return true;
+    }
+
+    private long getLastModified() {
+        var lastModified = 0L;
+        for (var path : getSourcePaths()) lastModified = Math.max(lastModified, new File(path).lastModified());
+        return lastModified;
+    }
+
+    @NonNull
+    private HashMap<String, Object> newMatchCacheInfo() {
+        var info = new HashMap<String, Object>();
+        if (cacheChecker != null) {
+            // let the checker fill in whatever it validates against
+            cacheChecker.test(info);
+        } else {
+            info.put("lastModifyTime", getLastModified());
+            info.put("sourcePaths", getSourcePaths());
+        }
+        return info;
     }
 
     @SuppressWarnings("unchecked")
-    private void loadMatchCache() {
-        if (cacheInputStream == null && cacheOutputStream == null) {
-            return;
+    private void readMatchCache(@NonNull byte[] version) throws IOException, ClassNotFoundException {
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(version))) {
+            matchCache.cacheInfo = (HashMap<String, Object>) in.readObject();
+            matchCache.classListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
+            matchCache.methodListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
+            matchCache.fieldListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
+            matchCache.constructorListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
+            matchCache.parameterListCache = (ConcurrentHashMap<String, HashSet<AbstractMap.SimpleEntry<Integer, String>>>) in.readObject();
+
+            matchCache.classCache = (ConcurrentHashMap<String, String>) in.readObject();
+            matchCache.methodCache = (ConcurrentHashMap<String, String>) in.readObject();
+            matchCache.fieldCache = (ConcurrentHashMap<String, String>) in.readObject();
+            matchCache.constructorCache = (ConcurrentHashMap<String, String>) in.readObject();
+            matchCache.parameterCache = (ConcurrentHashMap<String, AbstractMap.SimpleEntry<Integer, String>>) in.readObject();
+
+            try {
+                matchCache.missCache = (ConcurrentHashMap<String, String>) in.readObject();
+            } catch (EOFException | OptionalDataException e) {
+                // written before misses were persisted, the rest of the version is still good
+                matchCache.missCache = new ConcurrentHashMap<>();
+            }
+        }
+    }
+
+    private boolean loadMatchCache() {
+        if (cacheInputStream == null && cacheOutputStream == null && sharedCache == null) {
+            return false;
         }
         matchCache = new MatchCache();
+        matchCacheVersion = -1;
         try {
-            if (cacheInputStream != null) {
-                try (var in = new ObjectInputStream(cacheInputStream)) {
-                    matchCache.cacheInfo = (HashMap<String, Object>) in.readObject();
-                    matchCache.classListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
-                    matchCache.methodListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
-                    matchCache.fieldListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
-                    matchCache.constructorListCache = (ConcurrentHashMap<String, HashSet<String>>) in.readObject();
-                    matchCache.parameterListCache = (ConcurrentHashMap<String, HashSet<AbstractMap.SimpleEntry<Integer, String>>>) in.readObject();
-
-                    matchCache.classCache = (ConcurrentHashMap<String, String>) in.readObject();
-                    matchCache.methodCache = (ConcurrentHashMap<String, String>) in.readObject();
-                    matchCache.fieldCache = (ConcurrentHashMap<String, String>) in.readObject();
-                    matchCache.constructorCache = (ConcurrentHashMap<String, String>) in.readObject();
-                    matchCache.parameterCache = (ConcurrentHashMap<String, AbstractMap.SimpleEntry<Integer, String>>) in.readObject();
-                }
-            }
-            if (cacheChecker != null) {
-                var info = matchCache.cacheInfo;
-                if (!cacheChecker.test(info)) {
-                    matchCache = new MatchCache();
-                    matchCache.cacheInfo = info;
-                }
-            } else {
-                var oldObj = matchCache.cacheInfo.get("lastModifyTime");
-                var old = oldObj instanceof Long ? (long) oldObj : 0;
-                var now = new File(sourcePath).lastModified();
-                if (old != now) {
-                    matchCache = new MatchCache();
-                    matchCache.cacheInfo.put("lastModifyTime", now);
-                }
+            matchCacheVersions = readMatchCacheVersions();
+            matchCacheVersion = findMatchCacheVersion(matchCacheVersions);
+            if (matchCacheVersion >= 0) {
+                readMatchCache(matchCacheVersions.get(matchCacheVersion));
             }
         } catch (Throwable e) {
             if (exceptionHandler != null) {
                 exceptionHandler.test(e);
             }
             matchCache = new MatchCache();
+            matchCacheVersion = -1;
+        }
+        if (matchCacheVersion < 0) {
+            matchCache.cacheInfo = newMatchCacheInfo();
+            return false;
         }
+        hydrating = true;
         for (var e : matchCache.classCache.entrySet()) {
             var hit = keyedClassMatches.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(hit, e.getValue().isEmpty())) continue;
+            if (optimisticCache) hydratedMatches.add(hit);
             try {
                 var cache = e.getValue();
                 hit.match(cache.isEmpty() ? null : reflector.loadClass(cache));
@@ -659,7 +1385,8 @@ final class HookBuilderImpl implements HookBuilder {
         }
         for (var e : matchCache.methodCache.entrySet()) {
             var hit = keyedMethodMatches.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(hit, e.getValue().isEmpty())) continue;
+            if (optimisticCache) hydratedMatches.add(hit);
             try {
                 var cache = e.getValue();
                 hit.match(cache.isEmpty() ? null : reflector.loadMethod(cache));
@@ -670,7 +1397,8 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.fieldCache.entrySet()) {
             var hit = keyedFieldMatches.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(hit, e.getValue().isEmpty())) continue;
+            if (optimisticCache) hydratedMatches.add(hit);
             try {
                 var cache = e.getValue();
                 hit.match(cache.isEmpty() ? null : reflector.loadField(cache));
@@ -681,7 +1409,8 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.constructorCache.entrySet()) {
             var hit = keyedConstructorMatches.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(hit, e.getValue().isEmpty())) continue;
+            if (optimisticCache) hydratedMatches.add(hit);
             try {
                 var cache = e.getValue();
                 hit.match(cache.isEmpty() ? null : reflector.loadConstructor(cache));
@@ -692,7 +1421,8 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.parameterCache.entrySet()) {
             var hit = keyedParameterMatches.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(hit, e.getValue().getValue().isEmpty())) continue;
+            if (optimisticCache) hydratedMatches.add(hit);
             try {
                 var cache = e.getValue();
                 var methodName = cache.getValue();
@@ -716,7 +1446,8 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.classListCache.entrySet()) {
             var hit = keyedClassMatchers.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(e.getValue().isEmpty())) continue;
+            hydratedMatchers.add(hit);
             try {
                 var value = e.getValue();
                 if (value.isEmpty()) hit.match(Collections.emptyList());
@@ -728,11 +1459,12 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.methodListCache.entrySet()) {
             var hit = keyedMethodMatchers.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(e.getValue().isEmpty())) continue;
+            hydratedMatchers.add(hit);
             try {
                 var value = e.getValue();
                 if (value.isEmpty()) hit.match(Collections.emptyList());
-                hit.match(reflector.loadMethods(value));
+                hit.match(reflector.loadMethods(value, methodTables));
             } catch (Throwable ex) {
                 hit.match(Collections.emptyList());
             }
@@ -740,11 +1472,12 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.fieldListCache.entrySet()) {
             var hit = keyedFieldMatchers.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(e.getValue().isEmpty())) continue;
+            hydratedMatchers.add(hit);
             try {
                 var value = e.getValue();
                 if (value.isEmpty()) hit.match(Collections.emptyList());
-                hit.match(reflector.loadFields(value));
+                hit.match(reflector.loadFields(value, fieldTables));
             } catch (Throwable ex) {
                 hit.match(Collections.emptyList());
             }
@@ -752,11 +1485,12 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.constructorListCache.entrySet()) {
             var hit = keyedConstructorMatchers.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(e.getValue().isEmpty())) continue;
+            hydratedMatchers.add(hit);
             try {
                 var value = e.getValue();
                 if (value.isEmpty()) hit.match(Collections.emptyList());
-                hit.match(reflector.loadConstructors(value));
+                hit.match(reflector.loadConstructors(value, constructorTables));
             } catch (Throwable ex) {
                 hit.match(Collections.emptyList());
             }
@@ -764,7 +1498,8 @@ final class HookBuilderImpl implements HookBuilder {
 
         for (var e : matchCache.parameterListCache.entrySet()) {
             var hit = keyedParameterMatchers.get(e.getKey());
-            if (hit == null) continue;
+            if (hit == null || !trustCache(e.getValue().isEmpty())) continue;
+            hydratedMatchers.add(hit);
             try {
                 var value = e.getValue();
                 if (value.isEmpty()) hit.match(Collections.emptyList());
@@ -789,103 +1524,458 @@ final class HookBuilderImpl implements HookBuilder {
                 }
             }
         }
+
+        hydrating = false;
+
+        final var listener = missListener;
+        if (listener != null && !optimisticCache) {
+            for (var e : matchCache.missCache.entrySet()) {
+                var key = e.getKey();
+                if (isKeyed(key)) {
+                    callbackExecutor.submit(() -> listener.accept(key, e.getValue()));
+                }
+            }
+        }
+        return true;
+    }
+
+    // a cached miss cannot be checked in background like a cached match, so the optimistic
+    // build searches for it again instead of trusting it
+    private boolean trustCache(boolean miss) {
+        return !miss || !optimisticCache;
+    }
+
+    // likewise a single match derived from other results has no matcher to be checked against
+    private boolean trustCache(@NonNull ReflectMatchImpl<?, ?, ?, ?, ?, ?> hit, boolean miss) {
+        return trustCache(miss) && (!optimisticCache || hit.source != null);
+    }
+
+    private boolean isKeyed(@NonNull String key) {
+        return keyedClassMatchers.containsKey(key) || keyedMethodMatchers.containsKey(key) ||
+                keyedFieldMatchers.containsKey(key) || keyedConstructorMatchers.containsKey(key) ||
+                keyedParameterMatchers.containsKey(key) || keyedClassMatches.containsKey(key) ||
+                keyedMethodMatches.containsKey(key) || keyedFieldMatches.containsKey(key) ||
+                keyedConstructorMatches.containsKey(key) || keyedParameterMatches.containsKey(key);
+    }
+
+    private void revalidateMatchCache() {
+        if (!optimisticCache || (hydratedMatchers.isEmpty() && hydratedMatches.isEmpty())) return;
+        final var listener = cacheRevalidationListener;
+        for (var matcher : hydratedMatchers) {
+            matchExecutor.submit(() -> {
+                if (!revalidate(matcher) && listener != null) {
+                    listener.accept(matcher.key);
+                }
+                return null;
+            });
+        }
+        for (var match : hydratedMatches) {
+            matchExecutor.submit(() -> {
+                final var key = match.key;
+                if (!revalidate(match) && listener != null && key != null) {
+                    listener.accept(key);
+                }
+                return null;
+            });
+        }
+        hydratedMatchers.clear();
+        hydratedMatches.clear();
+    }
+
+    private <Reflect> boolean revalidate(@NonNull ReflectMatcherImpl<?, ?, Reflect, ?, ?> matcher) {
+        final var seq = matcher.lazySequence;
+        final var matches = seq != null ? seq.matches.get() : null;
+        if (matches == null) return true;
+        // cached misses are not hydrated, so nothing left means the cached names no longer load
+        if (!matches.iterator().hasNext()) return false;
+        for (var match : matches) {
+            if (matcher.mismatch(match) != null) return false;
+        }
+        return true;
+    }
+
+    private <Reflect> boolean revalidate(@NonNull ReflectMatchImpl<?, ?, Reflect, ?, ?, ?> match) {
+        final var source = match.source;
+        final var wrapper = match.match.get();
+        if (source == null || wrapper == null) return true;
+        return wrapper.reflect != null && source.mismatch(wrapper.reflect) == null;
+    }
+
+    private <Reflect> void saveListCache(@NonNull Map<String, ? extends ReflectMatcherImpl<?, ?, Reflect, ?, ?>> matchers, @NonNull Map<String, HashSet<String>> cache, @NonNull Transformer<Reflect, String> transformer) {
+        for (var e : matchers.entrySet()) {
+            var seq = e.getValue().lazySequence;
+            var matches = seq != null ? seq.matches.get() : null;
+            if (matches == null) continue;
+            var value = new HashSet<String>();
+            for (var match : matches) {
+                value.add(transformer.transform(match));
+            }
+            cache.put(e.getKey(), value);
+        }
+    }
+
+    private <Reflect> void saveItemCache(@NonNull Map<String, ? extends ReflectMatchImpl<?, ?, Reflect, ?, ?, ?>> matches, @NonNull Map<String, String> cache, @NonNull Transformer<Reflect, String> transformer) {
+        for (var e : matches.entrySet()) {
+            var match = e.getValue().match.get();
+            if (match == null) continue;
+            cache.put(e.getKey(), match.reflect == null ? "" : transformer.transform(match.reflect));
+        }
+    }
+
+    private void saveMatchCache() {
+        if (matchCache == null || (cacheOutputStream == null && sharedCache == null)) {
+            closeSharedCache();
+            return;
+        }
+        try {
+            saveListCache(keyedClassMatchers, matchCache.classListCache, Class::getName);
+            saveListCache(keyedMethodMatchers, matchCache.methodListCache, Reflector::getSignature);
+            saveListCache(keyedFieldMatchers, matchCache.fieldListCache, Reflector::getSignature);
+            saveListCache(keyedConstructorMatchers, matchCache.constructorListCache, Reflector::getSignature);
+            saveItemCache(keyedClassMatches, matchCache.classCache, Class::getName);
+            saveItemCache(keyedMethodMatches, matchCache.methodCache, Reflector::getSignature);
+            saveItemCache(keyedFieldMatches, matchCache.fieldCache, Reflector::getSignature);
+            saveItemCache(keyedConstructorMatches, matchCache.constructorCache, Reflector::getSignature);
+            for (var e : keyedParameterMatchers.entrySet()) {
+                var seq = e.getValue().lazySequence;
+                var matches = seq != null ? seq.matches.get() : null;
+                if (matches == null) continue;
+                var value = new HashSet<AbstractMap.SimpleEntry<Integer, String>>();
+                for (var parameter : matches) {
+                    if (!(parameter.getDeclaringExecutable() instanceof Method)) {
+                        value = null;
+                        break;
+                    }
+                    value.add(new AbstractMap.SimpleEntry<>(parameter.getIndex(), Reflector.getSignature((Method) parameter.getDeclaringExecutable())));
+                }
+                if (value != null) matchCache.parameterListCache.put(e.getKey(), value);
+            }
+            for (var e : keyedParameterMatches.entrySet()) {
+                var match = e.getValue().match.get();
+                if (match == null) continue;
+                var parameter = match.reflect;
+                if (parameter == null) {
+                    matchCache.parameterCache.put(e.getKey(), new AbstractMap.SimpleEntry<>(-1, ""));
+                } else if (parameter.getDeclaringExecutable() instanceof Method) {
+                    matchCache.parameterCache.put(e.getKey(), new AbstractMap.SimpleEntry<>(parameter.getIndex(), Reflector.getSignature((Method) parameter.getDeclaringExecutable())));
+                }
+            }
+
+            var versions = new ArrayList<byte[]>();
+            var version = writeMatchCache();
+            var size = (long) version.length;
+            versions.add(version);
+            for (var i = 0; i < matchCacheVersions.size() && versions.size() < cacheRetention; ++i) {
+                if (i == matchCacheVersion) continue;
+                var old = matchCacheVersions.get(i);
+                size += old.length;
+                // versions are kept from the most recently used, so the rest are evicted
+                if (size > cacheRetentionBytes) break;
+                versions.add(old);
+            }
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new ObjectOutputStream(bytes)) {
+                out.writeObject(versions);
+            }
+            var data = bytes.toByteArray();
+            if (sharedCache != null) {
+                sharedCache.publish(data);
+            }
+            if (cacheOutputStream != null) {
+                try (var out = cacheOutputStream) {
+                    out.write(data);
+                }
+            }
+        } catch (Throwable e) {
+            if (exceptionHandler != null) {
+                exceptionHandler.test(e);
+            }
+        } finally {
+            closeSharedCache();
+        }
+    }
+
+    @NonNull
+    private byte[] writeMatchCache() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(matchCache.cacheInfo);
+            out.writeObject(matchCache.classListCache);
+            out.writeObject(matchCache.methodListCache);
+            out.writeObject(matchCache.fieldListCache);
+            out.writeObject(matchCache.constructorListCache);
+            out.writeObject(matchCache.parameterListCache);
+
+            out.writeObject(matchCache.classCache);
+            out.writeObject(matchCache.methodCache);
+            out.writeObject(matchCache.fieldCache);
+            out.writeObject(matchCache.constructorCache);
+            out.writeObject(matchCache.parameterCache);
+
+            out.writeObject(matchCache.missCache);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void onMiss(@NonNull String key, @NonNull MissReason reason) {
+        if (matchCache != null) {
+            matchCache.missCache.put(key, reason.name());
+        }
+        final var listener = missListener;
+        if (listener != null) {
+            callbackExecutor.submit(() -> listener.accept(key, reason.name()));
+        }
+    }
+
+    private <Reflect extends Member> void memberClassLists(MemberMatcherImpl<?, ?, Reflect, ?, ?> matcher, MemberTables<Reflect> tables, AtomicReference<FutureTask<TreeMap<String, List<Reflect>>>> index) {
+        var candidates = new ArrayList<Reflect>();
+        if (matcher.declaringClass != null) {
+            var match = matcher.declaringClass.match.get();
+            if (match.reflect != null) {
+                final var name = matcher.getNameMatch();
+                final var exactName = name == null || !name.matcher.isExact() ? null : name.matcher.pattern;
+                final var inheritable = matcher.isInheritable();
+                candidates.addAll(tables.get(match.reflect, inheritable && matcher.includeSuper, inheritable && matcher.includeInterface).get(exactName, matcher.getParameterCount()));
+            }
+        } else {
+            try {
+                final var members = getMemberIndex(index, tables);
+                final var name = matcher.getNameMatch();
+                if (name == null || name.matcher.globs != null) {
+                    for (var list : members.values()) candidates.addAll(list);
+                } else if (name.matcher.prefixes != null) {
+                    for (var prefix : name.matcher.prefixes) {
+                        for (var list : members.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                            candidates.addAll(list);
+                        }
+                    }
+                } else if (name.matcher.matchPrefix) {
+                    for (var list : members.subMap(name.matcher.pattern, name.matcher.pattern + Character.MAX_VALUE).values()) {
+                        candidates.addAll(list);
+                    }
+                } else {
+                    var list = members.get(name.matcher.pattern);
+                    if (list != null) candidates.addAll(list);
+                }
+            } catch (Throwable e) {
+                if (exceptionHandler != null) exceptionHandler.test(e);
+            }
+        }
+        matcher.doMatch(candidates);
     }
 
-    private <Reflect extends Member> void memberClassLists(MemberMatcherImpl<?, ?, Reflect, ?, ?> matcher, Transformer<Class<?>, Reflect[]> transformer) {
-        final ArrayList<Class<?>> classList = new ArrayList<>();
-        if (matcher.declaringClass != null) {
-            var match = matcher.declaringClass.match.get();
-            if (match.reflect != null) classList.add(match.reflect);
-        } else if (exceptionHandler != null) {
-            exceptionHandler.test(new IllegalStateException("Match members without declaring class is not supported when not using dex analysis; set forceDexAnalysis to true to enable dex analysis."));
-        }
+    @NonNull
+    private <Reflect extends Member> TreeMap<String, List<Reflect>> getMemberIndex(@NonNull AtomicReference<FutureTask<TreeMap<String, List<Reflect>>>> index, @NonNull MemberTables<Reflect> tables) throws ExecutionException, InterruptedException {
+        final var task = AtomicHelper.updateIfNullAndGet(index, () -> new FutureTask<>(() -> {
+            final var members = new TreeMap<String, List<Reflect>>();
+            for (final var clazz : getScannedClasses()) {
+                final List<Reflect> reflects;
+                try {
+                    reflects = tables.get(clazz).get(null, -1);
+                } catch (LinkageError e) {
+                    if (exceptionHandler != null && !exceptionHandler.test(e)) break;
+                    continue;
+                }
+                for (final var member : reflects) {
+                    final var name = member instanceof Constructor ? "<init>" : member.getName();
+                    var list = members.get(name);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        members.put(name, list);
+                    }
+                    list.add(member);
+                }
+            }
+            return members;
+        }));
+        // the first caller builds it, others wait
+        task.run();
+        return task.get();
+    }
 
-        var candidates = new ArrayList<Reflect>();
-        for (final var clazz : classList) {
-            final var reflects = transformer.transform(clazz);
-            candidates.addAll(List.of(reflects));
-        }
-        matcher.doMatch(candidates);
+    @NonNull
+    private PackageIndex getPackageIndex() throws ExecutionException, InterruptedException {
+        final var task = AtomicHelper.updateIfNullAndGet(packageIndex, () -> new FutureTask<>(() -> new PackageIndex(allClassNames)));
+        task.run();
+        return task.get();
     }
 
-    private void analysisClassLoader() {
-        final TreeSetView<String> classNames;
-        try {
-            classNames = getAllClassNamesFromClassLoader();
-        } catch (Throwable e) {
-            if (exceptionHandler != null) {
-                exceptionHandler.test(e);
+    @NonNull
+    private List<Class<?>> getScannedClasses() throws ExecutionException, InterruptedException {
+        final var task = AtomicHelper.updateIfNullAndGet(scannedClasses, () -> new FutureTask<>(() -> {
+            final var subsets = new ArrayList<TreeSetView<String>>();
+            if (memberScanPrefixes == null) {
+                subsets.add(allClassNames);
+            } else {
+                for (var prefix : memberScanPrefixes) {
+                    subsets.add(allClassNames.subSet(prefix, prefix + Character.MAX_VALUE));
+                }
             }
-            return;
-        }
+            final var classes = new ArrayList<Class<?>>();
+            for (final var subset : subsets) {
+                for (final var className : subset) {
+                    try {
+                        classes.add(Class.forName(className, false, classLoader));
+                    } catch (ClassNotFoundException | LinkageError e) {
+                        if (exceptionHandler != null && !exceptionHandler.test(e)) return classes;
+                    }
+                }
+            }
+            return classes;
+        }));
+        task.run();
+        return task.get();
+    }
 
-        final boolean[] hasMatched = new boolean[]{false};
-        do {
-            // match class first
-            for (final var classMatcher : rootClassMatchers) {
-                // not leaf
-                if (classMatcher.leafCount.get() != 1) continue;
-                if (classMatcher.pending) continue;
-                hasMatched[0] = rootClassMatchers.remove(classMatcher) || hasMatched[0];
-                matchExecutor.submit(() -> {
-                    TreeSetView<String> subset = classNames;
-                    if (classMatcher.name != null) {
-                        final var nameMatcher = classMatcher.name.matcher;
-                        if (nameMatcher.matchPrefix) {
-                            subset = classNames.subSet(nameMatcher.pattern, nameMatcher.pattern + Character.MAX_VALUE);
-                        } else if (classNames.contains(nameMatcher.pattern)) {
-                            subset = TreeSetView.ofSorted(new String[]{nameMatcher.pattern});
-                        } else {
-                            subset = TreeSetView.ofSorted(new String[0]);
+    // large name subsets are loaded and filtered in parallel chunks, the last chunk to finish
+    // hands the matches to the matcher in name order
+    private void matchClassChunks(@NonNull ClassMatcherImpl classMatcher, @NonNull TreeSetView<String> subset) {
+        final var size = subset.size();
+        final var chunks = (size + CLASS_CHUNK_SIZE - 1) / CLASS_CHUNK_SIZE;
+        @SuppressWarnings("unchecked") final var results = (ArrayList<Class<?>>[]) new ArrayList<?>[chunks];
+        final var reasons = new MissReason[chunks];
+        final var remaining = new AtomicInteger(chunks);
+        // lowest chunk with a match, later chunks are skipped for matchFirst
+        final var firstMatched = new AtomicInteger(Integer.MAX_VALUE);
+        final var stopped = new AtomicBoolean(false);
+        for (var c = 0; c < chunks; ++c) {
+            final int chunk = c;
+            final var names = subset.slice(chunk * CLASS_CHUNK_SIZE, Math.min(size, (chunk + 1) * CLASS_CHUNK_SIZE));
+            matchExecutor.submit(() -> {
+                final var matches = new ArrayList<Class<?>>();
+                var missReason = MissReason.CANDIDATES;
+                try {
+                    for (final var className : names) {
+                        if (stopped.get() || (classMatcher.matchFirst && firstMatched.get() < chunk)) break;
+                        final var headerReason = classMatcher.mismatchHeader(className);
+                        if (headerReason != null) {
+                            if (headerReason.compareTo(missReason) > 0) missReason = headerReason;
+                            continue;
                         }
-                    }
-                    final ArrayList<Class<?>> candidates = new ArrayList<>(subset.size());
-                    for (final var className : subset) {
-                        // then check the rest conditions that need to load the class
                         final Class<?> theClass;
                         try {
                             theClass = Class.forName(className, false, classLoader);
-                            candidates.add(theClass);
-                        } catch (ClassNotFoundException e) {
+                        } catch (ClassNotFoundException | LinkageError e) {
                             if (exceptionHandler != null && !exceptionHandler.test(e)) {
+                                stopped.set(true);
+                            }
+                            continue;
+                        }
+                        final var reason = classMatcher.mismatch(theClass);
+                        if (reason == null) {
+                            matches.add(theClass);
+                            if (classMatcher.matchFirst) {
+                                var first = firstMatched.get();
+                                while (chunk < first && !firstMatched.compareAndSet(first, chunk)) {
+                                    first = firstMatched.get();
+                                }
                                 break;
                             }
+                        } else if (reason.compareTo(missReason) > 0) {
+                            missReason = reason;
                         }
                     }
-                    classMatcher.doMatch(candidates);
-                });
-            }
-            for (final var fieldMatcher : rootFieldMatchers) {
-                // not leaf
-                if (fieldMatcher.leafCount.get() != 1) continue;
-                if (fieldMatcher.pending) continue;
-                hasMatched[0] = rootFieldMatchers.remove(fieldMatcher) || hasMatched[0];
-                matchExecutor.submit(() -> memberClassLists(fieldMatcher, Class::getDeclaredFields));
+                } finally {
+                    // a failed chunk still counts, or the matcher would never complete
+                    results[chunk] = matches;
+                    reasons[chunk] = missReason;
+                    if (remaining.decrementAndGet() == 0) {
+                        final var merged = new ArrayList<Class<?>>();
+                        var mergedReason = MissReason.CANDIDATES;
+                        for (var i = 0; i < chunks; ++i) {
+                            merged.addAll(results[i]);
+                            if (reasons[i].compareTo(mergedReason) > 0) mergedReason = reasons[i];
+                            if (classMatcher.matchFirst && !merged.isEmpty()) break;
+                        }
+                        classMatcher.doMatchChecked(merged, mergedReason);
+                    }
+                }
+            });
+        }
+    }
+
+    private void analysisClassLoader() {
+        try {
+            allClassNames = getAllClassNames();
+        } catch (Throwable e) {
+            if (exceptionHandler != null) {
+                exceptionHandler.test(e);
             }
+            return;
+        }
 
-            for (final var methodMatcher : rootMethodMatchers) {
-                // not leaf
-                if (methodMatcher.leafCount.get() != 1) continue;
-                if (methodMatcher.pending) continue;
-                hasMatched[0] = rootMethodMatchers.remove(methodMatcher) || hasMatched[0];
-                matchExecutor.submit(() -> memberClassLists(methodMatcher, Class::getDeclaredMethods));
+        // from now on every root matcher is submitted the moment it is non-pending and its last
+        // dependency resolves, instead of waiting for a round of matching to finish
+        scheduling = true;
+        for (final var classMatcher : rootClassMatchers) classMatcher.schedule();
+        for (final var fieldMatcher : rootFieldMatchers) fieldMatcher.schedule();
+        for (final var methodMatcher : rootMethodMatchers) methodMatcher.schedule();
+        for (final var constructorMatcher : rootConstructorMatchers) constructorMatcher.schedule();
+        try {
+            matchExecutor.joinAll();
+        } catch (Throwable e) {
+            if (exceptionHandler != null) {
+                exceptionHandler.test(e);
             }
+        }
+    }
+
+    private boolean claimRoot(@NonNull ReflectMatcherImpl<?, ?, ?, ?, ?> matcher, @NonNull Queue<?> roots) {
+        // not leaf
+        if (!scheduling || matcher.pending || matcher.leafCount.get() != 1) return false;
+        return roots.remove(matcher);
+    }
 
-            for (final var constructorMatcher : rootConstructorMatchers) {
-                // not leaf
-                if (constructorMatcher.leafCount.get() != 1) continue;
-                if (constructorMatcher.pending) continue;
-                hasMatched[0] = rootConstructorMatchers.remove(constructorMatcher) || hasMatched[0];
-                matchExecutor.submit(() -> memberClassLists(constructorMatcher, Class::getDeclaredConstructors));
+    private void matchClassNames(@NonNull ClassMatcherImpl classMatcher) {
+        final var classNames = allClassNames;
+        TreeSetView<String> subset = classNames;
+        if (classMatcher.name != null) {
+            final var nameMatcher = classMatcher.name.matcher;
+            if (nameMatcher.prefixes != null) {
+                var subsets = new ArrayList<TreeSetView<String>>(nameMatcher.prefixes.length);
+                for (var prefix : nameMatcher.prefixes) {
+                    subsets.add(classNames.subSet(prefix, prefix + Character.MAX_VALUE));
+                }
+                subset = TreeSetView.mergeAll(subsets);
+            } else if (nameMatcher.globs != null) {
+                try {
+                    subset = getPackageIndex().find(nameMatcher.globs);
+                } catch (Throwable e) {
+                    if (exceptionHandler != null) exceptionHandler.test(e);
+                    subset = TreeSetView.ofSorted(new String[0]);
+                }
+            } else if (nameMatcher.matchPrefix) {
+                subset = classNames.subSet(nameMatcher.pattern, nameMatcher.pattern + Character.MAX_VALUE);
+            } else if (classNames.contains(nameMatcher.pattern)) {
+                subset = TreeSetView.ofSorted(new String[]{nameMatcher.pattern});
+            } else {
+                subset = TreeSetView.ofSorted(new String[0]);
+            }
+        }
+        if (subset.size() > CLASS_CHUNK_SIZE) {
+            matchClassChunks(classMatcher, subset);
+            return;
+        }
+        final ArrayList<Class<?>> candidates = new ArrayList<>(subset.size());
+        var missReason = MissReason.CANDIDATES;
+        for (final var className : subset) {
+            final var headerReason = classMatcher.mismatchHeader(className);
+            if (headerReason != null) {
+                if (headerReason.compareTo(missReason) > 0) missReason = headerReason;
+                continue;
             }
+            // then check the rest conditions that need to load the class
+            final Class<?> theClass;
             try {
-                matchExecutor.joinAll();
-            } catch (Throwable e) {
-                if (exceptionHandler != null) {
-                    if (!exceptionHandler.test(e)) break;
+                theClass = Class.forName(className, false, classLoader);
+                candidates.add(theClass);
+            } catch (ClassNotFoundException | LinkageError e) {
+                if (exceptionHandler != null && !exceptionHandler.test(e)) {
+                    break;
                 }
             }
-        } while (hasMatched[0]);
+        }
+        classMatcher.doMatch(candidates, missReason);
     }
 
     private abstract static class BaseMatcherImpl<Self extends BaseMatcherImpl<Self, Reflect, DexId>, Reflect, DexId extends DexParser.Id<DexId>> {
@@ -916,10 +2006,16 @@ final class HookBuilderImpl implements HookBuilder {
         protected int includeModifiers = 0; // (real & includeModifiers) == includeModifiers
         protected int excludeModifiers = 0; // (real & excludeModifiers) == 0
         protected volatile boolean pending = true;
+        @NonNull
+        private volatile MissReason prefilterReason = MissReason.CANDIDATES;
+        // whether the candidates already passed mismatch and are the matches themselves
+        private volatile boolean checked = false;
         @Nullable
-        private volatile SeqImpl lazySequence = null;
+        protected volatile SeqImpl lazySequence = null;
         private final BaseObserver<?> dependencyCallback = (BaseObserver<Object>) result -> {
-            if (leafCount.decrementAndGet() == 0) doMatch();
+            final var left = leafCount.decrementAndGet();
+            if (left == 0) doMatch();
+            else if (left == 1) schedule();
         };
 
         protected ReflectMatcherImpl(@Nullable ReflectMatcherImpl<?, ?, ?, ?, ?> rootMatcher, boolean matchFirst) {
@@ -935,6 +2031,11 @@ final class HookBuilderImpl implements HookBuilder {
 
         protected final synchronized SeqImpl build() {
             final var lazySequence = onBuild();
+            lazySequence.matcher = this;
+            // nested matchers depend on where their candidates come from, only describe root ones
+            if (rootMatcher == this) {
+                lazySequence.structure = describe();
+            }
             // specially, if matchFirst is true, propagate the key to the first match
             if (matchFirst && key != null) {
                 final var f = lazySequence.first().setKey(key);
@@ -949,12 +2050,30 @@ final class HookBuilderImpl implements HookBuilder {
             pending = true;
             leafCount.set(0);
             var seq = build();
+            seq.structure = exactStructure(exact);
             if (exact != null) {
                 seq.matches.set(Collections.singletonList(exact));
             }
             return seq;
         }
 
+        // cache those without explicit key by the description of their conditions, so the
+        // search can be skipped next time; this does not make them non-pending
+        protected final synchronized void setImplicitKey() {
+            final var lazySequence = this.lazySequence;
+            if (key != null || lazySequence == null || lazySequence.structure == null) return;
+            key = uniqueImplicitKey(lazySequence.structure);
+            onKey(key);
+        }
+
+        @CallSuper
+        @Nullable
+        protected String describe() {
+            return joinStructure(getClass().getSimpleName(), matchFirst, includeModifiers, excludeModifiers);
+        }
+
+        protected abstract void onKey(@NonNull String key);
+
         @NonNull
         @Override
         public final Base setKey(@NonNull String key) {
@@ -1006,7 +2125,16 @@ final class HookBuilderImpl implements HookBuilder {
         @NonNull
         protected abstract SeqImpl onBuild();
 
-        protected abstract void setNonPending();
+        @CallSuper
+        protected void setNonPending() {
+            pending = false;
+            schedule();
+        }
+
+        // submits a root matcher in class-loader mode once it is non-pending and all its
+        // dependencies are resolved
+        protected void schedule() {
+        }
 
         @NonNull
         protected final <T extends ReflectMatchImpl<T, U, RR, ?, ?, D>, U extends ReflectMatch<U, RR, ?>, RR, D extends DexParser.Id<D>> T addDependency(@Nullable T field, @NonNull U input) {
@@ -1043,18 +2171,38 @@ final class HookBuilderImpl implements HookBuilder {
             final var candidates = this.candidates.getAndSet(null);
             if (candidates != null) {
                 final var matches = new ArrayList<Reflect>();
+                var missReason = prefilterReason;
+                final var checked = this.checked;
                 for (final var candidate : candidates) {
-                    if (doMatch(candidate)) {
+                    final var reason = checked ? null : mismatch(candidate);
+                    if (reason == null) {
                         matches.add(candidate);
                         if (matchFirst) {
                             break;
                         }
+                    } else if (reason.compareTo(missReason) > 0) {
+                        missReason = reason;
                     }
                 }
+                if (matches.isEmpty() && key != null) {
+                    onMiss(key, missReason);
+                }
                 match(matches);
             }
         }
 
+        // do match on candidates that were already filtered, keeping the reason of their misses
+        protected final void doMatch(@NonNull Collection<Reflect> matches, @NonNull MissReason missReason) {
+            prefilterReason = missReason;
+            doMatch(matches);
+        }
+
+        // do match on candidates that already passed mismatch, without checking them again
+        protected final void doMatchChecked(@NonNull Collection<Reflect> matches, @NonNull MissReason missReason) {
+            checked = true;
+            doMatch(matches, missReason);
+        }
+
         // do match on reflect
         protected final void doMatch(@NonNull Collection<Reflect> candidates) {
             var leafCount = this.leafCount.decrementAndGet();
@@ -1064,16 +2212,19 @@ final class HookBuilderImpl implements HookBuilder {
             if (leafCount == 0) doMatch();
         }
 
+        // null if matches, otherwise the stage that rejects it
         @CallSuper
-        protected boolean doMatch(@NonNull Reflect reflect) {
+        @Nullable
+        protected MissReason mismatch(@NonNull Reflect reflect) {
             final int modifiers;
             if (reflect instanceof Class<?>) modifiers = ((Class<?>) reflect).getModifiers();
             else if (reflect instanceof Member) modifiers = ((Member) reflect).getModifiers();
             else if (reflect instanceof ParameterImpl)
                 modifiers = ((ParameterImpl) reflect).getModifiers();
             else modifiers = 0;
-            if ((modifiers & includeModifiers) != includeModifiers) return false;
-            return (modifiers & excludeModifiers) == 0;
+            if ((modifiers & includeModifiers) != includeModifiers) return MissReason.MODIFIERS;
+            if ((modifiers & excludeModifiers) != 0) return MissReason.MODIFIERS;
+            return null;
         }
     }
 
@@ -1094,33 +2245,72 @@ final class HookBuilderImpl implements HookBuilder {
         @NonNull
         @Override
         protected ClassLazySequenceImpl onBuild() {
-            if (key != null) keyedClassMatchers.put(key, this);
-            if (rootMatcher != this) rootClassMatchers.add(this);
+            if (key != null) onKey(key);
+            if (rootMatcher == this) rootClassMatchers.add(this);
             return new ClassLazySequenceImpl(rootMatcher);
         }
 
+        @Override
+        protected void schedule() {
+            if (claimRoot(this, rootClassMatchers)) matchExecutor.submit(() -> matchClassNames(this));
+        }
+
         @CallSuper
         @Override
         protected void setNonPending() {
+            super.setNonPending();
             if (superClass != null) superClass.rootMatcher.setNonPending();
             if (containsInterfaces != null) containsInterfaces.setNonPending();
         }
 
         @Override
-        protected boolean doMatch(@NonNull Class<?> theClass) {
-            if (!super.doMatch(theClass)) return false;
+        protected void onKey(@NonNull String key) {
+            keyedClassMatchers.put(key, this);
+        }
+
+        @Nullable
+        @Override
+        protected String describe() {
+            return joinStructure(super.describe(), structureOf(name), structureOf(superClass), structureOf(containsInterfaces));
+        }
+
+        @Nullable
+        @Override
+        protected MissReason mismatch(@NonNull Class<?> theClass) {
+            final var reason = super.mismatch(theClass);
+            if (reason != null) return reason;
             if (superClass != null) {
                 final var superClass = theClass.getSuperclass();
                 final var superClassMatch = this.superClass.match.get();
-                return superClass != null && superClassMatch.reflect != null && superClass == superClassMatch.reflect;
+                if (superClass == null || superClassMatch == null || superClass != superClassMatch.reflect)
+                    return MissReason.SUPER_CLASS;
             }
             if (containsInterfaces != null) {
                 final var ifArray = theClass.getInterfaces();
                 final var ifs = new HashSet<Class<?>>(ifArray.length);
                 Collections.addAll(ifs, ifArray);
-                return containsInterfaces.test(ifs);
+                if (!containsInterfaces.test(ifs)) return MissReason.INTERFACES;
             }
-            return true;
+            return null;
+        }
+
+        // rejects by the names in the dex class header without loading the class, null if it may match
+        @Nullable
+        private MissReason mismatchHeader(@NonNull String className) {
+            if (superClass == null && containsInterfaces == null) return null;
+            final var header = classHeaders.get(className);
+            if (header == null) return null;
+            if (superClass != null) {
+                final var superClassMatch = this.superClass.match.get();
+                if (superClassMatch == null || superClassMatch.reflect == null || !superClassMatch.reflect.getName().equals(header[0]))
+                    return MissReason.SUPER_CLASS;
+            }
+            if (containsInterfaces != null) {
+                final var ifs = new HashSet<String>(header.length);
+                for (var i = 1; i < header.length; ++i) ifs.add(header[i]);
+                if (!containsInterfaces.test(ifs, true)) return MissReason.INTERFACES;
+            }
+            return null;
         }
 
         @NonNull
@@ -1136,6 +2326,7 @@ final class HookBuilderImpl implements HookBuilder {
         public ClassMatcher setSuperClass(@NonNull ClassMatch superClassMatch) {
             ensureNotFinalized();
             this.superClass = addDependency(this.superClass, superClassMatch);
+            needClassHeaders = true;
             return this;
         }
 
@@ -1144,6 +2335,7 @@ final class HookBuilderImpl implements HookBuilder {
         public ClassMatcher setContainsInterfaces(@NonNull Syntax<ClassMatch> consumer) {
             ensureNotFinalized();
             this.containsInterfaces = addDependencies(this.containsInterfaces, consumer);
+            needClassHeaders = true;
             return this;
         }
 
@@ -1189,23 +2381,37 @@ final class HookBuilderImpl implements HookBuilder {
         @NonNull
         @Override
         protected ParameterLazySequenceImpl onBuild() {
-            if (key != null) keyedParameterMatchers.put(key, this);
+            if (key != null) onKey(key);
 //            if (rootMatcher != this) rootParameterMatchers.add(this);
             return new ParameterLazySequenceImpl(rootMatcher);
         }
 
         @Override
         protected void setNonPending() {
+            super.setNonPending();
             if (type != null) type.rootMatcher.setNonPending();
         }
 
         @Override
-        protected boolean doMatch(@NonNull Parameter parameter) {
-            if (!super.doMatch(parameter)) return false;
-            if (index >= 0 && index != parameter.getIndex()) return false;
-            if (type == null) return true;
+        protected void onKey(@NonNull String key) {
+            keyedParameterMatchers.put(key, this);
+        }
+
+        @Nullable
+        @Override
+        protected String describe() {
+            return joinStructure(super.describe(), index, structureOf(type));
+        }
+
+        @Nullable
+        @Override
+        protected MissReason mismatch(@NonNull Parameter parameter) {
+            final var reason = super.mismatch(parameter);
+            if (reason != null) return reason;
+            if (index >= 0 && index != parameter.getIndex()) return MissReason.INDEX;
+            if (type == null) return null;
             var typeMatch = type.match.get();
-            return typeMatch != null && typeMatch.reflect == parameter.getType();
+            return typeMatch != null && typeMatch.reflect == parameter.getType() ? null : MissReason.TYPE;
         }
 
         @NonNull
@@ -1273,15 +2479,44 @@ final class HookBuilderImpl implements HookBuilder {
         @CallSuper
         @Override
         protected void setNonPending() {
+            super.setNonPending();
             if (declaringClass != null) declaringClass.rootMatcher.setNonPending();
         }
 
+        @Nullable
+        protected StringMatchImpl getNameMatch() {
+            return null;
+        }
+
+        protected int getParameterCount() {
+            return -1;
+        }
+
+        // constructors are never inherited, so they only come from the declaring class itself
+        protected boolean isInheritable() {
+            return true;
+        }
+
+        @Nullable
+        @Override
+        protected String describe() {
+            return joinStructure(super.describe(), structureOf(declaringClass), includeSuper, includeInterface);
+        }
+
+        @Nullable
         @Override
-        protected boolean doMatch(@NonNull Reflect reflect) {
-            if (!super.doMatch(reflect)) return false;
-            if (declaringClass == null) return true;
+        protected MissReason mismatch(@NonNull Reflect reflect) {
+            final var reason = super.mismatch(reflect);
+            if (reason != null) return reason;
+            if (declaringClass == null) return null;
             final var declaringClass = this.declaringClass.match.get();
-            return declaringClass != null && declaringClass.reflect == reflect.getDeclaringClass();
+            if (declaringClass == null || declaringClass.reflect == null) return MissReason.DECLARING_CLASS;
+            final var declared = reflect.getDeclaringClass();
+            if (declaringClass.reflect == declared) return null;
+            // inherited members are accepted from the supertypes that were asked for, private ones are not inherited
+            if (!isInheritable() || Modifier.isPrivate(reflect.getModifiers())) return MissReason.DECLARING_CLASS;
+            if ((declared.isInterface() ? includeInterface : includeSuper) && declared.isAssignableFrom(declaringClass.reflect)) return null;
+            return MissReason.DECLARING_CLASS;
         }
 
         @NonNull
@@ -1333,21 +2568,45 @@ final class HookBuilderImpl implements HookBuilder {
             if (type != null) type.rootMatcher.setNonPending();
         }
 
+        @Override
+        protected void onKey(@NonNull String key) {
+            keyedFieldMatchers.put(key, this);
+        }
+
+        @Nullable
+        @Override
+        protected String describe() {
+            return joinStructure(super.describe(), structureOf(name), structureOf(type));
+        }
+
+        @Nullable
+        @Override
+        protected StringMatchImpl getNameMatch() {
+            return name;
+        }
+
         @NonNull
         @Override
         protected FieldLazySequenceImpl onBuild() {
-            if (key != null) keyedFieldMatchers.put(key, this);
-            if (rootMatcher != this) rootFieldMatchers.add(this);
+            if (key != null) onKey(key);
+            if (rootMatcher == this) rootFieldMatchers.add(this);
             return new FieldLazySequenceImpl(rootMatcher);
         }
 
         @Override
-        protected boolean doMatch(@NonNull Field field) {
-            if (!super.doMatch(field)) return false;
-            if (name != null && !name.test(field.getName())) return false;
-            if (type == null) return true;
+        protected void schedule() {
+            if (claimRoot(this, rootFieldMatchers)) matchExecutor.submit(() -> memberClassLists(this, fieldTables, fieldIndex));
+        }
+
+        @Nullable
+        @Override
+        protected MissReason mismatch(@NonNull Field field) {
+            final var reason = super.mismatch(field);
+            if (reason != null) return reason;
+            if (name != null && !name.testName(field.getName())) return MissReason.NAME;
+            if (type == null) return null;
             var typeMatch = type.match.get();
-            return typeMatch != null && typeMatch.reflect == field.getType();
+            return typeMatch != null && typeMatch.reflect == field.getType() ? null : MissReason.TYPE;
         }
 
         @NonNull
@@ -1437,18 +2696,33 @@ final class HookBuilderImpl implements HookBuilder {
             if (invokedConstructors != null) invokedConstructors.setNonPending();
         }
 
+        @Nullable
+        @Override
+        protected String describe() {
+            return joinStructure(super.describe(), parameterCount, structureOf(parameterTypes), structureOf(parameters),
+                    structureOf(referredStrings), structureOf(assignedFields), structureOf(accessedFields),
+                    structureOf(invokedMethods), structureOf(invokedConstructors), Arrays.toString(opcodes));
+        }
+
         @Override
-        protected boolean doMatch(@NonNull Reflect reflect) {
-            if (!super.doMatch(reflect)) return false;
+        protected int getParameterCount() {
+            return parameterCount;
+        }
+
+        @Nullable
+        @Override
+        protected MissReason mismatch(@NonNull Reflect reflect) {
+            final var reason = super.mismatch(reflect);
+            if (reason != null) return reason;
             final int parameterCount;
             if (reflect instanceof Method) {
                 parameterCount = ((Method) reflect).getParameterTypes().length;
             } else if (reflect instanceof Constructor) {
                 parameterCount = ((Constructor<?>) reflect).getParameterTypes().length;
             } else {
-                return false;
+                return MissReason.PARAMETER_COUNT;
             }
-            return this.parameterCount == -1 || this.parameterCount == parameterCount;
+            return this.parameterCount == -1 || this.parameterCount == parameterCount ? null : MissReason.PARAMETER_COUNT;
         }
 
         @NonNull
@@ -1562,6 +2836,8 @@ final class HookBuilderImpl implements HookBuilder {
             var b = new LazyBind() {
                 ParameterLazySequenceImpl s = new ParameterLazySequenceImpl(rootMatcher);
                 ArrayList<Parameter> p = new ArrayList<>(types.length);
+                StringBuilder structure = new StringBuilder("parameters:");
+                boolean describable = true;
 
                 @Override
                 public void onMatch() {
@@ -1577,10 +2853,14 @@ final class HookBuilderImpl implements HookBuilder {
                 var type = types[i];
                 if (type == null) continue;
                 final var pi = i;
+                final var typeStructure = structureOf(type);
+                if (typeStructure == null) b.describable = false;
+                b.structure.append(i).append('=').append(typeStructure).append(',');
                 type.bind(b, (bb, c) -> {
                     var p = new TypeOnlyParameter(pi, c);
                 });
             }
+            if (b.describable) b.s.structure = b.structure.toString();
             return b.s.conjunction();
         }
 
@@ -1589,11 +2869,14 @@ final class HookBuilderImpl implements HookBuilder {
         public Syntax<ParameterMatch> conjunction(@NonNull Class<?>... types) {
             ParameterLazySequenceImpl s = new ParameterLazySequenceImpl(rootMatcher);
             ArrayList<Parameter> p = new ArrayList<>(types.length);
+            final var structure = new StringBuilder("parameters:");
             for (int i = 0; i < types.length; i++) {
                 var type = types[i];
                 if (type == null) continue;
                 p.add(new TypeOnlyParameter(i, type));
+                structure.append(i).append('=').append(Reflector.getDescriptor(type)).append(',');
             }
+            s.structure = structure.toString();
             s.match(p);
             return s.conjunction();
         }
@@ -1603,6 +2886,8 @@ final class HookBuilderImpl implements HookBuilder {
         public Syntax<ParameterMatch> observe(int index, @NonNull ClassMatch types) {
             final var m = new ParameterMatchImpl(rootMatcher);
             m.index = index;
+            final var type = structureOf(types);
+            m.structure = type == null ? null : "parameter:" + index + '=' + type;
             types.onMatch(c -> m.match(new TypeOnlyParameter(index, c)));
             return m.observe();
         }
@@ -1612,6 +2897,7 @@ final class HookBuilderImpl implements HookBuilder {
         public Syntax<ParameterMatch> observe(int index, @NonNull Class<?> types) {
             final var m = new ParameterMatchImpl(rootMatcher);
             m.index = index;
+            m.structure = "parameter:" + index + '=' + Reflector.getDescriptor(types);
             m.match(new TypeOnlyParameter(index, types));
             return m.observe();
         }
@@ -1651,22 +2937,46 @@ final class HookBuilderImpl implements HookBuilder {
         }
 
         @Override
-        protected boolean doMatch(@NonNull Method method) {
-            if (!super.doMatch(method)) return false;
-            if (name != null && !name.test(method.getName())) return false;
-            if (returnType == null) return true;
+        protected void onKey(@NonNull String key) {
+            keyedMethodMatchers.put(key, this);
+        }
+
+        @Nullable
+        @Override
+        protected String describe() {
+            return joinStructure(super.describe(), structureOf(name), structureOf(returnType));
+        }
+
+        @Nullable
+        @Override
+        protected StringMatchImpl getNameMatch() {
+            return name;
+        }
+
+        @Nullable
+        @Override
+        protected MissReason mismatch(@NonNull Method method) {
+            final var reason = super.mismatch(method);
+            if (reason != null) return reason;
+            if (name != null && !name.testName(method.getName())) return MissReason.NAME;
+            if (returnType == null) return null;
             var returnTypeMatch = returnType.match.get();
-            return returnTypeMatch != null && returnTypeMatch.reflect == method.getReturnType();
+            return returnTypeMatch != null && returnTypeMatch.reflect == method.getReturnType() ? null : MissReason.RETURN_TYPE;
         }
 
         @NonNull
         @Override
         protected MethodLazySequenceImpl onBuild() {
-            if (key != null) keyedMethodMatchers.put(key, this);
-            if (rootMatcher != this) rootMethodMatchers.add(this);
+            if (key != null) onKey(key);
+            if (rootMatcher == this) rootMethodMatchers.add(this);
             return new MethodLazySequenceImpl(rootMatcher);
         }
 
+        @Override
+        protected void schedule() {
+            if (claimRoot(this, rootMethodMatchers)) matchExecutor.submit(() -> memberClassLists(this, methodTables, methodIndex));
+        }
+
         @NonNull
         @Override
         public MethodMatcher setName(@NonNull StringMatch name) {
@@ -1724,12 +3034,28 @@ final class HookBuilderImpl implements HookBuilder {
             super(rootMatcher, matchFirst);
         }
 
+        @Override
+        protected boolean isInheritable() {
+            return false;
+        }
+
         @NonNull
         @Override
         protected ConstructorLazySequenceImpl onBuild() {
-            if (key != null) keyedConstructorMatchers.put(key, this);
+            if (key != null) onKey(key);
+            if (rootMatcher == this) rootConstructorMatchers.add(this);
             return new ConstructorLazySequenceImpl(rootMatcher);
         }
+
+        @Override
+        protected void schedule() {
+            if (claimRoot(this, rootConstructorMatchers)) matchExecutor.submit(() -> memberClassLists(this, constructorTables, constructorIndex));
+        }
+
+        @Override
+        protected void onKey(@NonNull String key) {
+            keyedConstructorMatchers.put(key, this);
+        }
     }
 
     private final class StringMatcherImpl extends BaseMatcherImpl<StringMatcherImpl, String, DexParser.StringId> {
@@ -1738,15 +3064,56 @@ final class HookBuilderImpl implements HookBuilder {
 
         private final boolean matchPrefix;
 
+        @Nullable
+        private final String[] prefixes;
+
+        @Nullable
+        private final String[][] globs;
+
+        // the globs as given, matched as plain wildcards against member names
+        @Nullable
+        private final String[] globPatterns;
+
         private StringMatcherImpl(@NonNull String pattern, boolean matchFirst, boolean matchPrefix) {
+            this(pattern, matchFirst, matchPrefix, null, null);
+        }
+
+        private StringMatcherImpl(@NonNull String pattern, boolean matchFirst, boolean matchPrefix, @Nullable String[] prefixes, @Nullable String[] globPatterns) {
             super(matchFirst);
             this.pattern = pattern;
             this.matchPrefix = matchPrefix;
+            this.prefixes = prefixes;
+            this.globPatterns = globPatterns;
+            this.globs = globPatterns == null ? null : PackageIndex.parseGlobs(globPatterns);
+        }
+
+        private boolean isExact() {
+            return !matchPrefix && globs == null;
+        }
+
+        private boolean test(@NonNull String value) {
+            if (prefixes != null) {
+                for (var prefix : prefixes) {
+                    if (value.startsWith(prefix)) return true;
+                }
+                return false;
+            }
+            if (globs != null) return PackageIndex.matches(globs, value);
+            return matchPrefix ? value.startsWith(pattern) : pattern.equals(value);
+        }
+
+        private boolean testName(@NonNull String name) {
+            if (globPatterns == null) return test(name);
+            for (var glob : globPatterns) {
+                if (matchesWildcard(glob, name)) return true;
+            }
+            return false;
         }
 
         private StringMatch build() {
             var match = new StringMatchImpl(this);
-            stringMatches.add(match);
+            if (prefixes == null && globs == null) stringMatches.add(match);
+            else multiStringMatches.add(match);
             return match;
         }
     }
@@ -1772,6 +3139,22 @@ final class HookBuilderImpl implements HookBuilder {
 
         abstract Syntax<Match> newSelf(@Nullable Syntax<Match> other, char operator);
 
+        @Nullable
+        protected final String describe() {
+            if (operands instanceof BaseSyntaxImpl.BinaryOperands) {
+                final var binaryOperands = (BinaryOperands) operands;
+                final var left = structureOf(binaryOperands.left.value);
+                final var right = structureOf(binaryOperands.right.value);
+                if (left == null || right == null) return null;
+                return "(" + left + binaryOperands.operator + right + ")";
+            } else {
+                final var unaryOperands = (UnaryOperands) operands;
+                final var operand = structureOf(unaryOperands.operand.value);
+                if (operand == null) return null;
+                return unaryOperands.operator + "(" + operand + ")";
+            }
+        }
+
         @NonNull
         @Override
         public Syntax<Match> and(@NonNull Syntax<Match> other) {
@@ -1858,42 +3241,51 @@ final class HookBuilderImpl implements HookBuilder {
             return other == null ? new ReflectSyntaxImpl<>(this, operator) : new ReflectSyntaxImpl<>(this, other, operator);
         }
 
-        private boolean operandTest(@NonNull Operand operand, @NonNull HashSet<Reflect> set, char operator) {
+        // classes are compared by name when testing against the names in a dex class header
+        private boolean contains(@NonNull HashSet<?> set, @Nullable Reflect reflect, boolean byName) {
+            return set.contains(byName && reflect instanceof Class ? ((Class<?>) reflect).getName() : reflect);
+        }
+
+        private boolean operandTest(@NonNull Operand operand, @NonNull HashSet<?> set, char operator, boolean byName) {
             if (operand.value instanceof ReflectMatchImpl) {
                 ReflectMatchImpl<?, ?, Reflect, ?, ?, ?>.ReflectWrapper match = ((ReflectMatchImpl<?, ?, Reflect, ?, ?, ?>) operand.value).match.get();
                 if (match == null) return false;
-                return set.contains(match.reflect);
+                return contains(set, match.reflect, byName);
             } else if (operand.value instanceof LazySequence) {
                 final var matches = ((LazySequenceImpl<?, ?, Reflect, ?, ?, ?, ?>) operand.value).matches.get();
                 if (matches == null || matches.isEmpty()) return false;
                 if (operator == '^') {
-                    for (final var match : matches) if (!set.contains(match)) return false;
+                    for (final var match : matches) if (!contains(set, match, byName)) return false;
                     return true;
                 } else if (operator == 'v') {
-                    for (final var match : matches) if (set.contains(match)) return true;
+                    for (final var match : matches) if (contains(set, match, byName)) return true;
                 }
                 return false;
             } else if (operand.value instanceof ReflectSyntaxImpl) {
-                return ((ReflectSyntaxImpl<?, ?, Reflect>) operand.value).test(set);
+                return ((ReflectSyntaxImpl<?, ?, Reflect>) operand.value).test(set, byName);
             }
             return false;
         }
 
         private boolean test(@NonNull HashSet<Reflect> set) {
+            return test(set, false);
+        }
+
+        private boolean test(@NonNull HashSet<?> set, boolean byName) {
             if (operands instanceof BaseSyntaxImpl.BinaryOperands) {
                 BinaryOperands binaryOperands = (BinaryOperands) operands;
                 final var operator = binaryOperands.operator;
-                boolean leftMatch = operandTest(binaryOperands.left, set, operator);
+                boolean leftMatch = operandTest(binaryOperands.left, set, operator, byName);
                 if ((!leftMatch && operator == '&')) {
                     return false;
                 } else if (leftMatch && operator == '|') {
                     return true;
                 }
-                return operandTest(binaryOperands.left, set, operator);
+                return operandTest(binaryOperands.right, set, operator, byName);
             } else if (operands instanceof BaseSyntaxImpl.UnaryOperands) {
                 UnaryOperands unaryOperands = (UnaryOperands) operands;
                 final var operator = unaryOperands.operator;
-                boolean match = operandTest(unaryOperands.operand, set, operator);
+                boolean match = operandTest(unaryOperands.operand, set, operator, byName);
                 if (unaryOperands.operator == '!' || unaryOperands.operator == '-') {
                     return !match;
                 } else if (unaryOperands.operator == '+') {
@@ -1996,7 +3388,17 @@ final class HookBuilderImpl implements HookBuilder {
         private boolean operandTest(Operand operand, TreeSetView<String> set) {
             if (operand.value instanceof StringMatchImpl) {
                 var matcher = ((StringMatchImpl) operand.value).matcher;
-                if (matcher.matchPrefix) {
+                if (matcher.prefixes != null) {
+                    for (var prefix : matcher.prefixes) {
+                        if (!set.subSet(prefix, prefix + Character.MAX_VALUE).isEmpty()) return true;
+                    }
+                    return false;
+                } else if (matcher.globs != null) {
+                    for (var string : set) {
+                        if (matcher.test(string)) return true;
+                    }
+                    return false;
+                } else if (matcher.matchPrefix) {
                     return !set.subSet(matcher.pattern, matcher.pattern + Character.MAX_VALUE).isEmpty();
                 } else {
                     return set.contains(matcher.pattern);
@@ -2048,6 +3450,12 @@ final class HookBuilderImpl implements HookBuilder {
         // specially cache `first` since it's the only one that do not need to define any callback
         @Nullable
         private volatile Match first = null;
+        // how the matches are derived, null if not describable
+        @Nullable
+        protected volatile String structure = null;
+        // the matcher producing the matches, null if they are derived from other results
+        @Nullable
+        protected volatile ReflectMatcherImpl<?, ?, Reflect, ?, ?> matcher = null;
 
         protected LazySequenceImpl(@NonNull ReflectMatcherImpl<?, ?, ?, ?, ?> rootMatcher) {
             this.rootMatcher = rootMatcher;
@@ -2059,6 +3467,8 @@ final class HookBuilderImpl implements HookBuilder {
             var f = first;
             if (f == null) {
                 final var m = newMatch();
+                m.structure = derive(".first");
+                m.source = matcher;
                 addObserver((ListObserver<Reflect>) result -> {
                     final var i = result.iterator();
                     if (i.hasNext()) m.match(i.next());
@@ -2122,6 +3532,7 @@ final class HookBuilderImpl implements HookBuilder {
         @NonNull
         @Override
         public final Base substituteIfMiss(@NonNull Supplier<Base> substitute) {
+            structure = null;
             missReplacements.add((LazySequenceImpl<Base, Match, Reflect, Matcher, MatchImpl, MatcherImpl, DexId>) substitute.get());
             return (Base) this;
         }
@@ -2131,6 +3542,7 @@ final class HookBuilderImpl implements HookBuilder {
         public final Base matchIfMiss(@NonNull Consumer<Matcher> consumer) {
             final var m = newMatcher(false);
             consumer.accept((Matcher) m);
+            structure = null;
             missReplacements.add((LazySequenceImpl<Base, Match, Reflect, Matcher, MatchImpl, MatcherImpl, DexId>) m.build());
             return (Base) this;
         }
@@ -2160,11 +3572,15 @@ final class HookBuilderImpl implements HookBuilder {
 
         protected final synchronized void match(@NonNull Collection<Reflect> matches) {
             if (!this.matches.compareAndSet(null, matches)) return;
-            final Runnable runnable = () -> {
+            final Runnable notify = () -> {
                 for (final var observer : observers) {
                     observer.update(matches);
                 }
             };
+            // callbacks of results hydrated from the match cache are tagged, so an optimistic build
+            // can deliver them ahead of the analysis
+            final var cached = hydrating ? (PendingExecutor) callbackExecutor : null;
+            final Runnable runnable = cached != null ? () -> cached.runFromCache(notify) : notify;
             if (matches.iterator().hasNext()) {
                 matchExecutor.submit(runnable);
             } else {
@@ -2178,6 +3594,12 @@ final class HookBuilderImpl implements HookBuilder {
             }
         }
 
+        @Nullable
+        protected final String derive(@NonNull String suffix) {
+            final var structure = this.structure;
+            return structure == null ? null : structure + suffix;
+        }
+
         @NonNull
         protected abstract MatchImpl newMatch();
 
@@ -2584,6 +4006,12 @@ final class HookBuilderImpl implements HookBuilder {
         protected volatile String key = null;
         @NonNull
         protected AtomicReference<ReflectWrapper> match = new AtomicReference<>(null);
+        // how the match is derived, null if not describable
+        @Nullable
+        protected volatile String structure = null;
+        // the matcher whose first match this is, a cached match is checked against it
+        @Nullable
+        protected volatile ReflectMatcherImpl<?, ?, Reflect, ?, ?> source = null;
 
         protected ReflectMatchImpl(@NonNull ReflectMatcherImpl<?, ?, ?, ?, ?> rootMatcher) {
             this.rootMatcher = rootMatcher;
@@ -2598,6 +4026,7 @@ final class HookBuilderImpl implements HookBuilder {
         @NonNull
         @Override
         public final Base setKey(@Nullable String key) {
+            onKey(key, this.key);
             this.key = key;
             rootMatcher.setNonPending();
             return (Base) this;
@@ -2626,6 +4055,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final synchronized Base substituteIfMiss(@NonNull Supplier<Base> replacement) {
             final var re = (Self) replacement.get();
+            structure = null;
             missReplacements.add(re);
             return (Base) this;
         }
@@ -2636,6 +4066,7 @@ final class HookBuilderImpl implements HookBuilder {
             MatcherImpl m = newFirstMatcher();
             consumer.accept((Matcher) m);
             m.pending = true;
+            structure = null;
             missReplacements.add((ReflectMatchImpl<Self, Base, Reflect, Matcher, MatcherImpl, DexId>) m.build().first());
             return (Base) this;
         }
@@ -2679,11 +4110,13 @@ final class HookBuilderImpl implements HookBuilder {
 
         protected final synchronized void match(@Nullable Reflect match) {
             if (!this.match.compareAndSet(null, new ReflectWrapper(match))) return;
-            Runnable runnable = () -> {
+            final Runnable notify = () -> {
                 for (var observer : observers) {
                     observer.update(match);
                 }
             };
+            final var cached = hydrating ? (PendingExecutor) callbackExecutor : null;
+            final Runnable runnable = cached != null ? () -> cached.runFromCache(notify) : notify;
             if (match != null) {
                 if (match instanceof AccessibleObject) {
                     ((AccessibleObject) match).setAccessible(true);
@@ -2702,6 +4135,12 @@ final class HookBuilderImpl implements HookBuilder {
             }
         }
 
+        @Nullable
+        protected final String derive(@NonNull String suffix) {
+            final var structure = this.structure;
+            return structure == null ? null : structure + suffix;
+        }
+
         @NonNull
         protected abstract MatcherImpl newFirstMatcher();
 
@@ -2744,6 +4183,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final ClassMatch getSuperClass() {
             final var m = new ClassMatchImpl(rootMatcher);
+            m.structure = derive(".superClass");
             addObserver((ItemObserver<Class<?>>) result -> m.match(result == null ? null : result.getSuperclass()));
             return m;
         }
@@ -2752,6 +4192,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final ClassLazySequence getInterfaces() {
             final var m = new ClassLazySequenceImpl(rootMatcher);
+            m.structure = derive(".interfaces");
             addObserver((ItemObserver<Class<?>>) result -> m.match(result == null ? Collections.emptyList() : List.of(result.getInterfaces())));
             return m;
         }
@@ -2760,6 +4201,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final MethodLazySequence getDeclaredMethods() {
             var m = new MethodLazySequenceImpl(rootMatcher);
+            m.structure = derive(".declaredMethods");
             addObserver((ItemObserver<Class<?>>) result -> m.match(result == null ? Collections.emptyList() : List.of(result.getDeclaredMethods())));
             return m;
         }
@@ -2768,6 +4210,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final ConstructorLazySequence getDeclaredConstructors() {
             final var m = new ConstructorLazySequenceImpl(rootMatcher);
+            m.structure = derive(".declaredConstructors");
             addObserver((ItemObserver<Class<?>>) result -> m.match(result == null ? Collections.emptyList() : List.of(result.getDeclaredConstructors())));
             return m;
         }
@@ -2776,6 +4219,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final FieldLazySequence getDeclaredFields() {
             final var m = new FieldLazySequenceImpl(rootMatcher);
+            m.structure = derive(".declaredFields");
             addObserver((ItemObserver<Class<?>>) result -> m.match(result == null ? Collections.emptyList() : List.of(result.getDeclaredFields())));
             return m;
         }
@@ -2784,6 +4228,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final ClassMatch getArrayType() {
             final var m = new ClassMatchImpl(rootMatcher);
+            m.structure = derive(".arrayType");
             addObserver((ItemObserver<Class<?>>) result -> m.match(result == null ? null : Array.newInstance(result, 0).getClass()));
             return m;
         }
@@ -2822,6 +4267,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public ClassMatch getType() {
             final var m = new ClassMatchImpl(rootMatcher);
+            m.structure = derive(".type");
             addObserver((ItemObserver<Parameter>) result -> m.match(result == null ? null : result.getType()));
             return m;
         }
@@ -2836,6 +4282,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final ClassMatch getDeclaringClass() {
             final var m = new ClassMatchImpl(rootMatcher);
+            m.structure = derive(".declaringClass");
             addObserver((ItemObserver<Reflect>) result -> m.match(result == null ? null : result.getDeclaringClass()));
             return m;
         }
@@ -2866,9 +4313,16 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public ClassMatch getType() {
             final var m = new ClassMatchImpl(rootMatcher);
+            m.structure = derive(".type");
             addObserver((ItemObserver<Field>) result -> m.match(result == null ? null : result.getType()));
             return m;
         }
+
+        @NonNull
+        @Override
+        public FieldMatch onAccessor(@NonNull Consumer<FieldAccessor> consumer) {
+            return onMatch(field -> consumer.accept(reflector.getAccessor(field)));
+        }
     }
 
     private abstract class ExecutableMatchImpl<Self extends ExecutableMatchImpl<Self, Base, Reflect, Matcher, MatcherImpl>, Base extends ExecutableMatch<Base, Reflect, Matcher>, Reflect extends Member, Matcher extends ExecutableMatcher<Matcher>, MatcherImpl extends MemberMatcherImpl<MatcherImpl, Matcher, Reflect, DexParser.MethodId, ?>> extends MemberMatchImpl<Self, Base, Reflect, Matcher, MatcherImpl, DexParser.MethodId> implements ExecutableMatch<Base, Reflect, Matcher> {
@@ -2880,6 +4334,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public final ClassLazySequence getParameterTypes() {
             final var m = new ClassLazySequenceImpl(rootMatcher);
+            m.structure = derive(".parameterTypes");
             addObserver((ItemObserver<Reflect>) result -> {
                 if (result instanceof Method) {
                     m.match(List.of(((Method) result).getParameterTypes()));
@@ -2894,6 +4349,7 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public ParameterLazySequence getParameters() {
             final var m = new ParameterLazySequenceImpl(rootMatcher);
+            m.structure = derive(".parameters");
             addObserver((ItemObserver<Reflect>) result -> {
                 if (result == null) {
                     m.match(Collections.emptyList());
@@ -2979,9 +4435,16 @@ final class HookBuilderImpl implements HookBuilder {
         @Override
         public ClassMatch getReturnType() {
             final var m = new ClassMatchImpl(rootMatcher);
+            m.structure = derive(".returnType");
             addObserver((ItemObserver<Method>) result -> m.match(result == null ? null : result.getReturnType()));
             return m;
         }
+
+        @NonNull
+        @Override
+        public MethodMatch onInvoker(@NonNull Consumer<MethodInvoker> consumer) {
+            return onMatch(method -> consumer.accept(reflector.getInvoker(method)));
+        }
     }
 
     private final class ConstructorMatchImpl extends ExecutableMatchImpl<ConstructorMatchImpl, ConstructorMatch, Constructor<?>, ConstructorMatcher, ConstructorMatcherImpl> implements ConstructorMatch {
@@ -2995,6 +4458,12 @@ final class HookBuilderImpl implements HookBuilder {
             return new ConstructorMatcherImpl(rootMatcher, true);
         }
 
+        @NonNull
+        @Override
+        public ConstructorMatch onInvoker(@NonNull Consumer<ConstructorInvoker> consumer) {
+            return onMatch(constructor -> consumer.accept(reflector.getInvoker(constructor)));
+        }
+
         @Override
         protected void onKey(@Nullable String newKey, @Nullable String oldKey) {
             if (oldKey != null) {
@@ -3019,8 +4488,11 @@ final class HookBuilderImpl implements HookBuilder {
 
         @SuppressWarnings("BooleanMethodIsAlwaysInverted")
         private boolean test(@NonNull String value) {
-            if (matcher.matchPrefix && !value.startsWith(matcher.pattern)) return false;
-            return matcher.pattern.equals(value);
+            return matcher.test(value);
+        }
+
+        private boolean testName(@NonNull String name) {
+            return matcher.testName(name);
         }
 
         @NonNull
@@ -1,18 +1,40 @@
 package io.github.libxposed.helper;
 
+import android.os.Build;
 import android.os.Handler;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.Queue;
@@ -28,6 +50,7 @@ import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import io.github.libxposed.api.utils.DexParser;
 
@@ -105,7 +128,7 @@ final class ParameterImpl implements HookBuilder.Parameter {
 
     @Override
     public int getIndex() {
-        return 0;
+        return index;
     }
 
     @NonNull
@@ -199,10 +222,25 @@ abstract class SimpleExecutor {
 final class PendingExecutor extends SimpleExecutor {
     @NonNull
     final Queue<FutureTask<?>> pendingTasks = new ConcurrentLinkedQueue<>();
+    // tasks submitted while results hydrated from the match cache are delivered
+    @NonNull
+    final Set<FutureTask<?>> cachedTasks = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    @NonNull
+    private final ThreadLocal<Boolean> fromCache = new ThreadLocal<>();
+
+    void runFromCache(@NonNull Runnable runnable) {
+        fromCache.set(Boolean.TRUE);
+        try {
+            runnable.run();
+        } finally {
+            fromCache.remove();
+        }
+    }
 
     @Override
     <T> Future<T> onSubmit(Callable<T> task) {
         FutureTask<T> futureTask = new FutureTask<>(task);
+        if (fromCache.get() != null) cachedTasks.add(futureTask);
         pendingTasks.add(futureTask);
         return futureTask;
     }
@@ -233,6 +271,1237 @@ final class MatchCache {
     ConcurrentHashMap<String, String> constructorCache = new ConcurrentHashMap<>();
     @NonNull
     ConcurrentHashMap<String, AbstractMap.SimpleEntry<Integer, String>> parameterCache = new ConcurrentHashMap<>();
+
+    // key -> MissReason of keyed matchers that matched nothing, reported to the miss listener only;
+    // the empty list cached for the same key is what skips the search
+    @NonNull
+    ConcurrentHashMap<String, String> missCache = new ConcurrentHashMap<>();
+}
+
+// stages in the order matchers check them, a miss reports the last stage any candidate reached
+enum MissReason {
+    CANDIDATES,
+    MODIFIERS,
+    DECLARING_CLASS,
+    INDEX,
+    PARAMETER_COUNT,
+    NAME,
+    SUPER_CLASS,
+    INTERFACES,
+    TYPE,
+    RETURN_TYPE,
+}
+
+// one process holds the exclusive lock and computes, others hold the shared lock and read
+final class SharedCacheFile implements Closeable {
+    // file locks are held per process and overlapping ones throw, so every builder of the process shares one
+    private static final HashMap<String, LockFile> lockFiles = new HashMap<>();
+
+    private static final class LockFile {
+        @NonNull
+        final String key;
+        @NonNull
+        final RandomAccessFile file;
+        // threads of the same process need their own lock
+        final ReentrantReadWriteLock localLock = new ReentrantReadWriteLock();
+        int refs = 0;
+        int readers = 0;
+        @Nullable
+        FileLock lock;
+
+        LockFile(@NonNull String key) throws IOException {
+            this.key = key;
+            file = new RandomAccessFile(key + ".lock", "rw");
+        }
+
+        void lockShared() throws IOException {
+            localLock.readLock().lock();
+            try {
+                synchronized (this) {
+                    if (readers == 0) lock = file.getChannel().lock(0, Long.MAX_VALUE, true);
+                    ++readers;
+                }
+            } catch (Throwable e) {
+                localLock.readLock().unlock();
+                throw e;
+            }
+        }
+
+        void unlockShared() throws IOException {
+            try {
+                synchronized (this) {
+                    if (--readers == 0 && lock != null) {
+                        lock.release();
+                        lock = null;
+                    }
+                }
+            } finally {
+                localLock.readLock().unlock();
+            }
+        }
+
+        void lockExclusive() throws IOException {
+            localLock.writeLock().lock();
+            try {
+                synchronized (this) {
+                    lock = file.getChannel().lock();
+                }
+            } catch (Throwable e) {
+                localLock.writeLock().unlock();
+                throw e;
+            }
+        }
+
+        void unlockExclusive() throws IOException {
+            try {
+                synchronized (this) {
+                    if (lock != null) {
+                        lock.release();
+                        lock = null;
+                    }
+                }
+            } finally {
+                localLock.writeLock().unlock();
+            }
+        }
+    }
+
+    @NonNull
+    private final File path;
+    // locks are taken on a sidecar file, so the cache itself can be replaced by a rename
+    @NonNull
+    private final LockFile lockFile;
+    private boolean shared = false;
+    private boolean exclusive = false;
+    private boolean closed = false;
+
+    private SharedCacheFile(@NonNull File path, @NonNull LockFile lockFile) {
+        this.path = path;
+        this.lockFile = lockFile;
+    }
+
+    @NonNull
+    private static LockFile acquire(@NonNull String key) throws IOException {
+        synchronized (lockFiles) {
+            var lockFile = lockFiles.get(key);
+            if (lockFile == null) {
+                lockFile = new LockFile(key);
+                lockFiles.put(key, lockFile);
+            }
+            ++lockFile.refs;
+            return lockFile;
+        }
+    }
+
+    private static void release(@NonNull LockFile lockFile) throws IOException {
+        synchronized (lockFiles) {
+            if (--lockFile.refs > 0) return;
+            lockFiles.remove(lockFile.key);
+            lockFile.file.close();
+        }
+    }
+
+    @NonNull
+    static SharedCacheFile openShared(@NonNull File path) throws IOException {
+        var canonical = path.getCanonicalFile();
+        var cache = new SharedCacheFile(canonical, acquire(canonical.getPath()));
+        try {
+            cache.lockFile.lockShared();
+            cache.shared = true;
+        } catch (Throwable e) {
+            cache.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    boolean isExclusive() {
+        return exclusive;
+    }
+
+    void upgrade() throws IOException {
+        if (exclusive) return;
+        if (shared) {
+            shared = false;
+            lockFile.unlockShared();
+        }
+        lockFile.lockExclusive();
+        exclusive = true;
+    }
+
+    @Nullable
+    InputStream openInputStream() throws IOException {
+        if (!path.isFile()) return null;
+        final ByteBuffer buffer;
+        try (var file = new RandomAccessFile(path, "r")) {
+            var size = file.length();
+            if (size == 0) return null;
+            // the mapping stays valid after the file is closed
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) {
+                if (!buffer.hasRemaining()) return -1;
+                len = Math.min(len, buffer.remaining());
+                buffer.get(b, off, len);
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+
+            @Override
+            public boolean markSupported() {
+                return true;
+            }
+
+            @Override
+            public void mark(int readLimit) {
+                buffer.mark();
+            }
+
+            @Override
+            public void reset() {
+                buffer.reset();
+            }
+        };
+    }
+
+    void publish(@NonNull byte[] data) throws IOException {
+        if (!isExclusive()) {
+            throw new IllegalStateException("Cannot publish without holding the exclusive lock");
+        }
+        // readers see either the old or the new cache, never a partially written one
+        var temp = new File(path.getPath() + ".tmp");
+        try (var out = new FileOutputStream(temp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(path)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Cannot replace " + path);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (shared) {
+                shared = false;
+                lockFile.unlockShared();
+            } else if (exclusive) {
+                exclusive = false;
+                lockFile.unlockExclusive();
+            }
+        } finally {
+            release(lockFile);
+        }
+    }
+}
+
+// method handles where available, reflection otherwise
+final class Invokers {
+    private Invokers() {
+    }
+
+    @NonNull
+    static HookBuilder.MethodInvoker of(@NonNull Method method) {
+        method.setAccessible(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                var handle = MethodHandles.lookup().unreflect(method);
+                if (Modifier.isStatic(method.getModifiers())) {
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                }
+                final var spreader = handle.asSpreader(Object[].class, method.getParameterTypes().length)
+                        .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+                return (thisObject, args) -> (Object) spreader.invokeExact(thisObject, args);
+            } catch (IllegalAccessException ignored) {
+            }
+        }
+        return (thisObject, args) -> {
+            try {
+                return method.invoke(thisObject, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    @NonNull
+    static HookBuilder.ConstructorInvoker of(@NonNull Constructor<?> constructor) {
+        constructor.setAccessible(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                final var spreader = MethodHandles.lookup().unreflectConstructor(constructor)
+                        .asSpreader(Object[].class, constructor.getParameterTypes().length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+                return args -> (Object) spreader.invokeExact(args);
+            } catch (IllegalAccessException ignored) {
+            }
+        }
+        return args -> {
+            try {
+                return constructor.newInstance(args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    @NonNull
+    static HookBuilder.FieldAccessor of(@NonNull Field field) {
+        field.setAccessible(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                return new HandleFieldAccessor(field);
+            } catch (IllegalAccessException ignored) {
+            }
+        }
+        return new ReflectFieldAccessor(field);
+    }
+
+    @NonNull
+    static RuntimeException rethrow(@NonNull Throwable t) {
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new IllegalStateException(t);
+    }
+
+    // reflection for everything, the handle accessor overrides only its fast paths
+    private static class ReflectFieldAccessor implements HookBuilder.FieldAccessor {
+        @NonNull
+        final Field field;
+
+        private ReflectFieldAccessor(@NonNull Field field) {
+            this.field = field;
+        }
+
+        @Nullable
+        @Override
+        public Object get(@Nullable Object thisObject) {
+            try {
+                return field.get(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void set(@Nullable Object thisObject, @Nullable Object value) {
+            try {
+                field.set(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public boolean getBoolean(@Nullable Object thisObject) {
+            try {
+                return field.getBoolean(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setBoolean(@Nullable Object thisObject, boolean value) {
+            try {
+                field.setBoolean(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public byte getByte(@Nullable Object thisObject) {
+            try {
+                return field.getByte(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setByte(@Nullable Object thisObject, byte value) {
+            try {
+                field.setByte(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public char getChar(@Nullable Object thisObject) {
+            try {
+                return field.getChar(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setChar(@Nullable Object thisObject, char value) {
+            try {
+                field.setChar(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public short getShort(@Nullable Object thisObject) {
+            try {
+                return field.getShort(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setShort(@Nullable Object thisObject, short value) {
+            try {
+                field.setShort(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public int getInt(@Nullable Object thisObject) {
+            try {
+                return field.getInt(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setInt(@Nullable Object thisObject, int value) {
+            try {
+                field.setInt(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public long getLong(@Nullable Object thisObject) {
+            try {
+                return field.getLong(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setLong(@Nullable Object thisObject, long value) {
+            try {
+                field.setLong(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public float getFloat(@Nullable Object thisObject) {
+            try {
+                return field.getFloat(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setFloat(@Nullable Object thisObject, float value) {
+            try {
+                field.setFloat(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public double getDouble(@Nullable Object thisObject) {
+            try {
+                return field.getDouble(thisObject);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void setDouble(@Nullable Object thisObject, double value) {
+            try {
+                field.setDouble(thisObject, value);
+            } catch (IllegalAccessException e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static final class HandleFieldAccessor extends ReflectFieldAccessor {
+        @NonNull
+        private final Class<?> type;
+        @NonNull
+        private final MethodHandle getter;
+        @Nullable
+        private final MethodHandle setter;
+        // typed by the field type, primitives are read and written without boxing
+        @NonNull
+        private final MethodHandle typedGetter;
+        @Nullable
+        private final MethodHandle typedSetter;
+
+        private HandleFieldAccessor(@NonNull Field field) throws IllegalAccessException {
+            super(field);
+            this.type = field.getType();
+            final var typed = type.isPrimitive() ? type : Object.class;
+            var getter = MethodHandles.lookup().unreflectGetter(field);
+            final var isStatic = Modifier.isStatic(field.getModifiers());
+            if (isStatic) getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+            this.typedGetter = getter.asType(MethodType.methodType(typed, Object.class));
+            MethodHandle setter = null;
+            MethodHandle typedSetter = null;
+            // final fields have no setter handle, they are set by reflection
+            if (!Modifier.isFinal(field.getModifiers())) {
+                setter = MethodHandles.lookup().unreflectSetter(field);
+                if (isStatic) setter = MethodHandles.dropArguments(setter, 0, Object.class);
+                typedSetter = setter.asType(MethodType.methodType(void.class, Object.class, typed));
+                setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            }
+            this.setter = setter;
+            this.typedSetter = typedSetter;
+        }
+
+        @Nullable
+        @Override
+        public Object get(@Nullable Object thisObject) {
+            try {
+                return (Object) getter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void set(@Nullable Object thisObject, @Nullable Object value) {
+            if (setter == null) {
+                super.set(thisObject, value);
+                return;
+            }
+            try {
+                setter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public boolean getBoolean(@Nullable Object thisObject) {
+            if (type != boolean.class) return super.getBoolean(thisObject);
+            try {
+                return (boolean) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setBoolean(@Nullable Object thisObject, boolean value) {
+            if (type != boolean.class || typedSetter == null) {
+                super.setBoolean(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public byte getByte(@Nullable Object thisObject) {
+            if (type != byte.class) return super.getByte(thisObject);
+            try {
+                return (byte) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setByte(@Nullable Object thisObject, byte value) {
+            if (type != byte.class || typedSetter == null) {
+                super.setByte(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public char getChar(@Nullable Object thisObject) {
+            if (type != char.class) return super.getChar(thisObject);
+            try {
+                return (char) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setChar(@Nullable Object thisObject, char value) {
+            if (type != char.class || typedSetter == null) {
+                super.setChar(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public short getShort(@Nullable Object thisObject) {
+            if (type != short.class) return super.getShort(thisObject);
+            try {
+                return (short) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setShort(@Nullable Object thisObject, short value) {
+            if (type != short.class || typedSetter == null) {
+                super.setShort(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public int getInt(@Nullable Object thisObject) {
+            if (type != int.class) return super.getInt(thisObject);
+            try {
+                return (int) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setInt(@Nullable Object thisObject, int value) {
+            if (type != int.class || typedSetter == null) {
+                super.setInt(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public long getLong(@Nullable Object thisObject) {
+            if (type != long.class) return super.getLong(thisObject);
+            try {
+                return (long) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setLong(@Nullable Object thisObject, long value) {
+            if (type != long.class || typedSetter == null) {
+                super.setLong(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public float getFloat(@Nullable Object thisObject) {
+            if (type != float.class) return super.getFloat(thisObject);
+            try {
+                return (float) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setFloat(@Nullable Object thisObject, float value) {
+            if (type != float.class || typedSetter == null) {
+                super.setFloat(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public double getDouble(@Nullable Object thisObject) {
+            if (type != double.class) return super.getDouble(thisObject);
+            try {
+                return (double) typedGetter.invokeExact(thisObject);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void setDouble(@Nullable Object thisObject, double value) {
+            if (type != double.class || typedSetter == null) {
+                super.setDouble(thisObject, value);
+                return;
+            }
+            try {
+                typedSetter.invokeExact(thisObject, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+}
+
+final class CacheStatsImpl implements HookBuilder.CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long negativeHits;
+    private final long weakClears;
+
+    CacheStatsImpl(long hits, long misses, long negativeHits, long weakClears) {
+        this.hits = hits;
+        this.misses = misses;
+        this.negativeHits = negativeHits;
+        this.weakClears = weakClears;
+    }
+
+    @NonNull
+    CacheStatsImpl plus(@NonNull CacheStatsImpl other) {
+        return new CacheStatsImpl(hits + other.hits, misses + other.misses, negativeHits + other.negativeHits, weakClears + other.weakClears);
+    }
+
+    @NonNull
+    CacheStatsImpl minus(@NonNull CacheStatsImpl base) {
+        return new CacheStatsImpl(hits - base.hits, misses - base.misses, negativeHits - base.negativeHits, weakClears - base.weakClears);
+    }
+
+    @Override
+    public long getHits() {
+        return hits;
+    }
+
+    @Override
+    public long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public long getNegativeHits() {
+        return negativeHits;
+    }
+
+    @Override
+    public long getWeakClears() {
+        return weakClears;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", negativeHits=" + negativeHits + ", weakClears=" + weakClears;
+    }
+}
+
+final class LatencyHistogramImpl implements HookBuilder.LatencyHistogram {
+    static final int BUCKETS = 64;
+    private final long count;
+    private final long totalNanos;
+    @NonNull
+    private final long[] buckets;
+
+    LatencyHistogramImpl(long count, long totalNanos, @NonNull long[] buckets) {
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.buckets = buckets;
+    }
+
+    static int bucketOf(long nanos) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+    }
+
+    @NonNull
+    LatencyHistogramImpl minus(@NonNull LatencyHistogramImpl base) {
+        var buckets = new long[BUCKETS];
+        for (var i = 0; i < BUCKETS; i++) buckets[i] = this.buckets[i] - base.buckets[i];
+        return new LatencyHistogramImpl(count - base.count, totalNanos - base.totalNanos, buckets);
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @NonNull
+    @Override
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        var sb = new StringBuilder("count=").append(count).append(", totalNanos=").append(totalNanos);
+        for (var i = 0; i < BUCKETS; i++) {
+            if (buckets[i] != 0) sb.append(", <2^").append(i + 1).append("ns=").append(buckets[i]);
+        }
+        return sb.toString();
+    }
+}
+
+final class ReflectionStatsImpl implements HookBuilder.ReflectionStats {
+    @NonNull
+    private final CacheStatsImpl[] caches;
+    @NonNull
+    private final LatencyHistogramImpl[] latencies;
+
+    // caches and latencies in the order class, method, field, constructor
+    ReflectionStatsImpl(@NonNull CacheStatsImpl[] caches, @NonNull LatencyHistogramImpl[] latencies) {
+        this.caches = caches;
+        this.latencies = latencies;
+    }
+
+    @NonNull
+    ReflectionStatsImpl minus(@NonNull ReflectionStatsImpl base) {
+        var caches = new CacheStatsImpl[4];
+        var latencies = new LatencyHistogramImpl[4];
+        for (var i = 0; i < 4; i++) {
+            caches[i] = this.caches[i].minus(base.caches[i]);
+            latencies[i] = this.latencies[i].minus(base.latencies[i]);
+        }
+        return new ReflectionStatsImpl(caches, latencies);
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.CacheStats getClassCache() {
+        return caches[0];
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.CacheStats getMethodCache() {
+        return caches[1];
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.CacheStats getFieldCache() {
+        return caches[2];
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.CacheStats getConstructorCache() {
+        return caches[3];
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.LatencyHistogram getForNameLatency() {
+        return latencies[0];
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.LatencyHistogram getDeclaredMethodLatency() {
+        return latencies[1];
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.LatencyHistogram getDeclaredFieldLatency() {
+        return latencies[2];
+    }
+
+    @NonNull
+    @Override
+    public HookBuilder.LatencyHistogram getDeclaredConstructorLatency() {
+        return latencies[3];
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "class: " + caches[0] + "; method: " + caches[1] + "; field: " + caches[2] + "; constructor: " + caches[3] +
+                "; forName: " + latencies[0] + "; getDeclaredMethod: " + latencies[1] + "; getDeclaredField: " + latencies[2] + "; getDeclaredConstructor: " + latencies[3];
+    }
+}
+
+// declared members of one class bucketed by name and then by parameter count
+final class DeclaredMembers<T extends Member> {
+    @NonNull
+    private final Bucket<T> all;
+    @NonNull
+    private final HashMap<String, Bucket<T>> byName = new HashMap<>();
+
+    DeclaredMembers(@NonNull List<T> declared) {
+        var members = new ArrayList<T>(declared.size());
+        var linked = new int[declared.size()];
+        for (var member : declared) {
+            try {
+                linked[members.size()] = parameterCount(member);
+            } catch (LinkageError e) {
+                // a parameter type failed to link, only this member is unusable
+                continue;
+            }
+            members.add(member);
+        }
+        var counts = Arrays.copyOf(linked, members.size());
+        var names = new HashMap<String, ArrayList<Integer>>();
+        for (var i = 0; i < counts.length; i++) {
+            var member = members.get(i);
+            var name = member instanceof Constructor ? "<init>" : member.getName();
+            var indices = names.get(name);
+            if (indices == null) {
+                indices = new ArrayList<>(1);
+                names.put(name, indices);
+            }
+            indices.add(i);
+        }
+        all = new Bucket<>(members, counts);
+        for (var e : names.entrySet()) {
+            var indices = e.getValue();
+            var bucketMembers = new ArrayList<T>(indices.size());
+            var bucketCounts = new int[indices.size()];
+            for (var i = 0; i < bucketCounts.length; i++) {
+                bucketMembers.add(members.get(indices.get(i)));
+                bucketCounts[i] = counts[indices.get(i)];
+            }
+            byName.put(e.getKey(), new Bucket<>(bucketMembers, bucketCounts));
+        }
+    }
+
+    // members with the given name and parameter count, null and -1 match any
+    @NonNull
+    List<T> get(@Nullable String name, int parameterCount) {
+        var bucket = name == null ? all : byName.get(name);
+        if (bucket == null) return Collections.emptyList();
+        return bucket.get(parameterCount);
+    }
+
+    // like getDeclaredMethod, prefers the non-bridge one if several share the parameters
+    @Nullable
+    T find(@NonNull String name, @Nullable Class<?>[] parameterTypes) {
+        T found = null;
+        for (var member : get(name, parameterTypes == null ? -1 : parameterTypes.length)) {
+            if (parameterTypes != null && !Arrays.equals(parameterTypes(member), parameterTypes)) continue;
+            if (!(member instanceof Method) || !((Method) member).isBridge()) return member;
+            if (found == null) found = member;
+        }
+        return found;
+    }
+
+    @NonNull
+    private static Class<?>[] parameterTypes(@NonNull Member member) {
+        if (member instanceof Method) return ((Method) member).getParameterTypes();
+        if (member instanceof Constructor) return ((Constructor<?>) member).getParameterTypes();
+        return new Class<?>[0];
+    }
+
+    private static int parameterCount(@NonNull Member member) {
+        return parameterTypes(member).length;
+    }
+
+    private static final class Bucket<T> {
+        // sorted by parameter count, members with count c are at [starts[c], starts[c + 1])
+        @NonNull
+        private final List<T> members;
+        @NonNull
+        private final int[] starts;
+
+        private Bucket(@NonNull List<T> members, @NonNull int[] counts) {
+            var max = 0;
+            for (var count : counts) max = Math.max(max, count);
+            starts = new int[max + 2];
+            for (var count : counts) starts[count + 1]++;
+            for (var c = 1; c < starts.length; c++) starts[c] += starts[c - 1];
+            var sorted = new Object[counts.length];
+            var next = Arrays.copyOf(starts, starts.length);
+            for (var i = 0; i < counts.length; i++) sorted[next[counts[i]]++] = members.get(i);
+            //noinspection unchecked
+            this.members = (List<T>) Arrays.asList(sorted);
+        }
+
+        @NonNull
+        private List<T> get(int parameterCount) {
+            if (parameterCount < 0) return members;
+            if (parameterCount + 1 >= starts.length) return Collections.emptyList();
+            return members.subList(starts[parameterCount], starts[parameterCount + 1]);
+        }
+    }
+}
+
+// declared member tables per class, plus tables flattened over superclasses and/or interfaces;
+// flattened tables are built from the memoized tables of the direct supertypes, so each class
+// is reflected once however many matchers or subclasses ask for it
+final class MemberTables<T extends Member> {
+    @NonNull
+    private final Transformer<Class<?>, T[]> getter;
+    // indexed by (includeSuper ? 1 : 0) | (includeInterface ? 2 : 0)
+    @NonNull
+    private final List<ConcurrentHashMap<Class<?>, DeclaredMembers<T>>> tables = List.of(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+    MemberTables(@NonNull Transformer<Class<?>, T[]> getter) {
+        this.getter = getter;
+    }
+
+    @NonNull
+    DeclaredMembers<T> get(@NonNull Class<?> clazz) {
+        return get(clazz, false, false);
+    }
+
+    @NonNull
+    DeclaredMembers<T> get(@NonNull Class<?> clazz, boolean includeSuper, boolean includeInterface) {
+        final var map = tables.get((includeSuper ? 1 : 0) | (includeInterface ? 2 : 0));
+        var table = map.get(clazz);
+        if (table == null) {
+            table = includeSuper || includeInterface ? flatten(clazz, includeSuper, includeInterface) : new DeclaredMembers<>(Arrays.asList(getter.transform(clazz)));
+            var existing = map.putIfAbsent(clazz, table);
+            if (existing != null) table = existing;
+        }
+        return table;
+    }
+
+    @NonNull
+    private DeclaredMembers<T> flatten(@NonNull Class<?> clazz, boolean includeSuper, boolean includeInterface) {
+        // the same interface can be reached through several paths
+        final var members = new LinkedHashSet<>(get(clazz).get(null, -1));
+        if (includeSuper) {
+            final var superClass = clazz.getSuperclass();
+            if (superClass != null) addInherited(members, get(superClass, true, includeInterface));
+        }
+        if (includeInterface) {
+            for (final var i : clazz.getInterfaces()) {
+                addInherited(members, get(i, includeSuper, true));
+            }
+        }
+        return new DeclaredMembers<>(new ArrayList<>(members));
+    }
+
+    // private members are not inherited, as in the language
+    private static <T extends Member> void addInherited(@NonNull Set<T> members, @NonNull DeclaredMembers<T> supertype) {
+        for (final var member : supertype.get(null, -1)) {
+            if (!Modifier.isPrivate(member.getModifiers())) members.add(member);
+        }
+    }
+}
+
+// class names grouped in a trie of package segments; package globs are answered in one walk
+// where `*` is one segment and `**` any number of them
+final class PackageIndex {
+    @NonNull
+    private final String[] names;
+    @NonNull
+    private final Node root = new Node();
+
+    PackageIndex(@NonNull TreeSetView<String> classNames) {
+        names = new String[classNames.size()];
+        var n = 0;
+        for (var name : classNames) names[n++] = name;
+        var lastPackage = "";
+        var lastNode = root;
+        for (var i = 0; i < names.length; i++) {
+            var name = names[i];
+            var lastDot = name.lastIndexOf('.');
+            // sorted names mostly share the package of the previous one
+            if (lastDot < 0) {
+                root.add(i);
+                continue;
+            } else if (lastDot != lastPackage.length() || !name.startsWith(lastPackage)) {
+                lastPackage = name.substring(0, lastDot);
+                lastNode = root;
+                for (int start = 0, dot; start <= lastDot; start = dot + 1) {
+                    dot = name.indexOf('.', start);
+                    lastNode = lastNode.child(name.substring(start, dot));
+                }
+            }
+            lastNode.add(i);
+        }
+    }
+
+    @NonNull
+    static String[][] parseGlobs(@NonNull String... globs) {
+        var parsed = new String[globs.length][];
+        for (var i = 0; i < globs.length; i++) {
+            parsed[i] = globs[i].isEmpty() ? new String[0] : globs[i].split("\\.");
+        }
+        return parsed;
+    }
+
+    static boolean matches(@NonNull String[][] globs, @NonNull String className) {
+        var lastDot = className.lastIndexOf('.');
+        var segments = lastDot < 0 ? new String[0] : className.substring(0, lastDot).split("\\.");
+        for (var glob : globs) {
+            if (matches(glob, 0, segments, 0)) return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(@NonNull String[] glob, int g, @NonNull String[] segments, int s) {
+        if (g == glob.length) return s == segments.length;
+        if (glob[g].equals("**")) {
+            for (var k = s; k <= segments.length; k++) {
+                if (matches(glob, g + 1, segments, k)) return true;
+            }
+            return false;
+        }
+        if (s == segments.length) return false;
+        return (glob[g].equals("*") || glob[g].equals(segments[s])) && matches(glob, g + 1, segments, s + 1);
+    }
+
+    // class names in packages matching any of the globs, in name order
+    @NonNull
+    TreeSetView<String> find(@NonNull String[][] globs) {
+        var found = new ArrayList<Node>();
+        var states = new long[globs.length];
+        for (var g = 0; g < globs.length; g++) states[g] = (long) g << 32;
+        walk(root, globs, states, states.length, found);
+        var total = 0;
+        for (var node : found) total += node.count;
+        var indices = new int[total];
+        var p = 0;
+        for (var node : found) {
+            System.arraycopy(node.classes, 0, indices, p, node.count);
+            p += node.count;
+        }
+        Arrays.sort(indices);
+        var res = new String[total];
+        for (var i = 0; i < total; i++) res[i] = names[indices[i]];
+        return TreeSetView.ofSorted(res);
+    }
+
+    // a state is a glob index in the high half and the number of segments it has matched in the low
+    private static void walk(@NonNull Node node, @NonNull String[][] globs, @NonNull long[] states, int count, @NonNull List<Node> found) {
+        // `**` may also match no segment
+        for (var k = 0; k < count; k++) {
+            var glob = globs[(int) (states[k] >>> 32)];
+            var i = (int) states[k];
+            if (i < glob.length && glob[i].equals("**")) {
+                if (count == states.length) states = Arrays.copyOf(states, count * 2);
+                count = addState(states, count, states[k] + 1);
+            }
+        }
+        var accept = false;
+        var wildcard = false;
+        for (var k = 0; k < count; k++) {
+            var glob = globs[(int) (states[k] >>> 32)];
+            var i = (int) states[k];
+            if (i == glob.length) accept = true;
+            else if (glob[i].equals("*") || glob[i].equals("**")) wildcard = true;
+        }
+        if (accept) found.add(node);
+        if (node.children.isEmpty()) return;
+        if (wildcard) {
+            for (var e : node.children.entrySet()) {
+                step(e.getValue(), e.getKey(), globs, states, count, found);
+            }
+        } else {
+            var visited = new HashSet<String>();
+            for (var k = 0; k < count; k++) {
+                var glob = globs[(int) (states[k] >>> 32)];
+                var i = (int) states[k];
+                if (i == glob.length || !visited.add(glob[i])) continue;
+                var child = node.children.get(glob[i]);
+                if (child != null) step(child, glob[i], globs, states, count, found);
+            }
+        }
+    }
+
+    private static void step(@NonNull Node child, @NonNull String segment, @NonNull String[][] globs, @NonNull long[] states, int count, @NonNull List<Node> found) {
+        var next = new long[Math.max(count, 1)];
+        var n = 0;
+        for (var k = 0; k < count; k++) {
+            var glob = globs[(int) (states[k] >>> 32)];
+            var i = (int) states[k];
+            if (i == glob.length) continue;
+            if (glob[i].equals("**")) {
+                n = addState(next, n, states[k]);
+            } else if (glob[i].equals("*") || glob[i].equals(segment)) {
+                n = addState(next, n, states[k] + 1);
+            }
+        }
+        if (n > 0) walk(child, globs, next, n, found);
+    }
+
+    private static int addState(@NonNull long[] states, int count, long state) {
+        for (var k = 0; k < count; k++) {
+            if (states[k] == state) return count;
+        }
+        states[count] = state;
+        return count + 1;
+    }
+
+    private static final class Node {
+        @NonNull
+        private final HashMap<String, Node> children = new HashMap<>();
+        @NonNull
+        private int[] classes = new int[0];
+        private int count;
+
+        @NonNull
+        private Node child(@NonNull String segment) {
+            var child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        private void add(int index) {
+            if (count == classes.length) classes = Arrays.copyOf(classes, Math.max(4, count * 2));
+            classes[count++] = index;
+        }
+    }
 }
 
 final class TreeSetView<T extends Comparable<T>> implements Set<T>, SortedSet<T>, NavigableSet<T> {
@@ -255,6 +1524,11 @@ final class TreeSetView<T extends Comparable<T>> implements Set<T>, SortedSet<T>
         return new TreeSetView<>(array, start, end);
     }
 
+    // view of the elements at [fromIndex, toIndex) of this view
+    TreeSetView<T> slice(int fromIndex, int toIndex) {
+        return new TreeSetView<>(array, start + fromIndex, start + toIndex);
+    }
+
     static <T extends Comparable<T>> TreeSetView<T> ofSorted(Collection<T> c) {
         //noinspection unchecked
         return new TreeSetView<>((T[]) c.toArray(new Comparable[0]), 0, c.size());
@@ -439,13 +1713,13 @@ final class TreeSetView<T extends Comparable<T>> implements Set<T>, SortedSet<T>
         } else if (left < 0) {
             left = -left - 1;
         }
-        return new TreeSetView<>(array, left, array.length);
+        return new TreeSetView<>(array, left, end);
     }
 
     @NonNull
     @Override
     public Object[] toArray() {
-        var arr = new Comparable[array.length];
+        var arr = new Comparable[size()];
         System.arraycopy(array, start, arr, 0, size());
         return arr;
     }
@@ -453,7 +1727,7 @@ final class TreeSetView<T extends Comparable<T>> implements Set<T>, SortedSet<T>
     @NonNull
     @Override
     public <T1> T1[] toArray(@NonNull T1[] a) {
-        if (a.length >= array.length) {
+        if (a.length >= size()) {
             //noinspection SuspiciousSystemArraycopy
             System.arraycopy(array, start, a, 0, size());
             return a;
@@ -576,6 +1850,73 @@ final class TreeSetView<T extends Comparable<T>> implements Set<T>, SortedSet<T>
         }
         return new TreeSetView<>(res, 0, p);
     }
+
+    // heap-based k-way merge into one array, duplicates removed
+    @NonNull
+    static <T extends Comparable<T>> TreeSetView<T> mergeAll(@NonNull Collection<TreeSetView<T>> views) {
+        var sources = new ArrayList<TreeSetView<T>>(views.size());
+        var total = 0;
+        for (var view : views) {
+            if (view.size() == 0) continue;
+            sources.add(view);
+            total += view.size();
+        }
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        var k = sources.size();
+        // heap of source indices ordered by the element at their cursor
+        var heap = new int[k];
+        var cursors = new int[k];
+        for (var i = 0; i < k; i++) {
+            heap[i] = i;
+            cursors[i] = sources.get(i).start;
+        }
+        for (var i = k / 2 - 1; i >= 0; i--) {
+            siftDown(sources, cursors, heap, k, i);
+        }
+        // noinspection unchecked
+        var res = (T[]) new Comparable[total];
+        int p = 0;
+        while (k > 0) {
+            var s = heap[0];
+            var source = sources.get(s);
+            var head = source.array[cursors[s]];
+            if (p == 0 || res[p - 1].compareTo(head) != 0) {
+                res[p++] = head;
+            }
+            if (++cursors[s] == source.end) {
+                heap[0] = heap[--k];
+            }
+            if (k > 0) siftDown(sources, cursors, heap, k, 0);
+        }
+        // duplicates leave a tail of unused slots, the view simply ends before them
+        return new TreeSetView<>(res, 0, p);
+    }
+
+    private static <T extends Comparable<T>> void siftDown(@NonNull List<TreeSetView<T>> sources, @NonNull int[] cursors, @NonNull int[] heap, int size, int i) {
+        var s = heap[i];
+        var head = sources.get(s).array[cursors[s]];
+        while (true) {
+            var child = 2 * i + 1;
+            if (child >= size) break;
+            var c = heap[child];
+            var childHead = sources.get(c).array[cursors[c]];
+            if (child + 1 < size) {
+                var r = heap[child + 1];
+                var rightHead = sources.get(r).array[cursors[r]];
+                if (rightHead.compareTo(childHead) < 0) {
+                    child++;
+                    c = r;
+                    childHead = rightHead;
+                }
+            }
+            if (head.compareTo(childHead) <= 0) break;
+            heap[i] = c;
+            i = child;
+        }
+        heap[i] = s;
+    }
 }
 
 @SuppressWarnings("unused")
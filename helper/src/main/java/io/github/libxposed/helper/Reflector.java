@@ -3,6 +3,9 @@ package io.github.libxposed.helper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -10,530 +13,861 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.UnaryOperator;
 
 @SuppressWarnings("unused")
 final class Reflector {
     private static final Map<String, Character> abbreviationMap = Map.of("int", 'I', "boolean", 'Z', "float", 'F', "long", 'J', "short", 'S', "byte", 'B', "double", 'D', "char", 'C', "void", 'V');
     private static final Map<Character, Class<?>> primitiveClassMap = Map.of('I', int.class, 'Z', boolean.class, 'F', float.class, 'J', long.class, 'S', short.class, 'B', byte.class, 'D', double.class, 'C', char.class, 'V', void.class);
-    private static final WeakReference<?> EMPTY = new WeakReference<>(null);
+    // shared by all builders of the process; softly held, so an unused loader's reflector can
+    // be reclaimed under memory pressure, after which the loader itself can be collected
+    private static final WeakHashMap<ClassLoader, SoftReference<Reflector>> reflectors = new WeakHashMap<>();
+    // limits of every reflector, including ones created after they are set; guarded by reflectors
+    private static int strongLimit = Cache.DEFAULT_STRONG_LIMIT;
+    private static int negativeLimit = Cache.DEFAULT_NEGATIVE_LIMIT;
     private final ClassLoader classLoader;
-    private final HashMap<String, WeakReference<Class<?>>> classCache = new HashMap<>();
-    private final HashMap<MemberKey.Method, WeakReference<Method>> methodCache = new HashMap<>();
-    private final HashMap<MemberKey.Field, WeakReference<Field>> fieldCache = new HashMap<>();
-    private final HashMap<MemberKey.Constructor, WeakReference<Constructor<?>>> constructorCache = new HashMap<>();
+    private final Cache<String, Class<?>> classCache = new Cache<>();
+    private final Cache<MemberKey, Method> methodCache = new Cache<>();
+    private final Cache<MemberKey, Field> fieldCache = new Cache<>();
+    private final Cache<MemberKey, Constructor<?>> constructorCache = new Cache<>();
+    private final Cache<Method, HookBuilder.MethodInvoker> methodInvokers = new Cache<>();
+    private final Cache<Constructor<?>, HookBuilder.ConstructorInvoker> constructorInvokers = new Cache<>();
+    private final Cache<Field, HookBuilder.FieldAccessor> fieldAccessors = new Cache<>();
+    // memo of raw signatures, skips parsing on repeated lookups
+    private final Cache<String, Class<?>> classSignatures = new Cache<>();
+    private final Cache<String, Method> methodSignatures = new Cache<>();
+    private final Cache<String, Field> fieldSignatures = new Cache<>();
+    private final Cache<String, Constructor<?>> constructorSignatures = new Cache<>();
+    private final Latency forNameLatency = new Latency();
+    private final Latency declaredMethodLatency = new Latency();
+    private final Latency declaredFieldLatency = new Latency();
+    private final Latency declaredConstructorLatency = new Latency();
 
     Reflector(ClassLoader classLoader) {
         this.classLoader = classLoader;
     }
 
     @NonNull
-    Class<?> loadClass(@NonNull String className) throws ClassNotFoundException {
-        className = className.trim().replace('/', '.');
-        if (className.startsWith("L") && className.endsWith(";")) {
-            className = className.substring(1, className.length() - 1);
-        } else if (className.endsWith("[]")) {
-            var sb = new StringBuilder();
-            while (className.endsWith("[]")) {
-                className = className.substring(0, className.length() - 2);
-                sb.append('[');
-            }
-            var abbr = abbreviationMap.get(className);
-            if (abbr != null) {
-                sb.append(abbr);
-            } else {
-                sb.append('L').append(className).append(';');
+    static Reflector of(ClassLoader classLoader) {
+        synchronized (reflectors) {
+            final var ref = reflectors.get(classLoader);
+            var reflector = ref == null ? null : ref.get();
+            if (reflector == null) {
+                reflector = new Reflector(classLoader);
+                if (strongLimit != Cache.DEFAULT_STRONG_LIMIT || negativeLimit != Cache.DEFAULT_NEGATIVE_LIMIT) {
+                    reflector.applyCacheLimits(strongLimit, negativeLimit);
+                }
+                reflectors.put(classLoader, new SoftReference<>(reflector));
             }
-            className = sb.toString();
+            return reflector;
         }
-        try {
-            WeakReference<Class<?>> ref;
-            synchronized (classCache) {
-                ref = classCache.get(className);
-            }
-            if (ref == EMPTY) {
-                throw new ClassNotFoundException(className);
+    }
+
+    @NonNull
+    ReflectionStatsImpl getStats() {
+        // a lookup answered by the signature memo never reaches the cache behind it, so its hit is added
+        return new ReflectionStatsImpl(new CacheStatsImpl[]{classCache.getStats().plus(classSignatures.getStats()), methodCache.getStats().plus(methodSignatures.getStats()),
+                fieldCache.getStats().plus(fieldSignatures.getStats()), constructorCache.getStats().plus(constructorSignatures.getStats())},
+                new LatencyHistogramImpl[]{forNameLatency.getHistogram(), declaredMethodLatency.getHistogram(), declaredFieldLatency.getHistogram(), declaredConstructorLatency.getHistogram()});
+    }
+
+    static void setCacheLimits(int strongLimit, int negativeLimit) {
+        synchronized (reflectors) {
+            Reflector.strongLimit = strongLimit;
+            Reflector.negativeLimit = negativeLimit;
+            for (var ref : reflectors.values()) {
+                final var reflector = ref.get();
+                if (reflector != null) reflector.applyCacheLimits(strongLimit, negativeLimit);
             }
-            var clazz = ref != null ? ref.get() : null;
+        }
+    }
+
+    private void applyCacheLimits(int strongLimit, int negativeLimit) {
+        for (var cache : List.of(classCache, methodCache, fieldCache, constructorCache, methodInvokers, constructorInvokers, fieldAccessors, classSignatures, methodSignatures, fieldSignatures, constructorSignatures)) {
+            cache.setLimits(strongLimit, negativeLimit);
+        }
+    }
+
+    @NonNull
+    Class<?> loadClass(@NonNull String className) throws ClassNotFoundException {
+        var clazz = classSignatures.peek(className);
+        if (clazz == null) {
+            if (classSignatures.isNegative(className)) throw new ClassNotFoundException(className);
+            clazz = findType(className, 0, className.length());
             if (clazz == null) {
-                try {
-                    clazz = Class.forName(className, false, classLoader);
-                } catch (ClassNotFoundException e) {
-                    synchronized (classCache) {
-                        //noinspection unchecked
-                        classCache.put(className, (WeakReference<Class<?>>) EMPTY);
-                    }
-                    throw e;
-                }
-                synchronized (classCache) {
-                    classCache.put(className, new WeakReference<>(clazz));
-                }
-            }
-            return clazz;
-        } catch (ClassNotFoundException e) {
-            final int lastDot = className.lastIndexOf('.');
-            if (lastDot > 0) {
-                try {
-                    final String innerClassName = className.substring(0, lastDot) + '$' + className.substring(lastDot + 1);
-                    return loadClass(innerClassName);
-                } catch (ClassNotFoundException ignored) {
-                }
+                classSignatures.putNegative(className);
+                throw new ClassNotFoundException(className);
             }
-            throw e;
+            classSignatures.put(className, clazz);
         }
+        return clazz;
     }
 
     @NonNull
     Field loadField(@NonNull String fieldString) throws ClassNotFoundException, NoSuchFieldException {
+        return loadField(fieldString, null);
+    }
+
+    @NonNull
+    Method loadMethod(@NonNull String methodString) throws ClassNotFoundException, NoSuchMethodException {
+        return loadMethod(methodString, null);
+    }
+
+    @NonNull
+    Constructor<?> loadConstructor(@NonNull String constructorString) throws ClassNotFoundException, NoSuchMethodException {
+        return loadConstructor(constructorString, null);
+    }
+
+    @NonNull
+    HookBuilder.MethodInvoker getInvoker(@NonNull Method method) {
+        return Objects.requireNonNull(methodInvokers.get(method, Invokers::of));
+    }
+
+    @NonNull
+    HookBuilder.ConstructorInvoker getInvoker(@NonNull Constructor<?> constructor) {
+        return Objects.requireNonNull(constructorInvokers.get(constructor, Invokers::of));
+    }
+
+    @NonNull
+    HookBuilder.FieldAccessor getAccessor(@NonNull Field field) {
+        return Objects.requireNonNull(fieldAccessors.get(field, Invokers::of));
+    }
+
+    @NonNull
+    Collection<Class<?>> loadClasses(Collection<String> classNames) throws ClassNotFoundException {
+        ArrayList<Class<?>> classes = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            classes.add(loadClass(className));
+        }
+        return classes;
+    }
+
+    // members of the same class are looked up from one getDeclaredFields() call
+    @NonNull
+    Collection<Field> loadFields(Collection<String> fieldStrings) throws ClassNotFoundException, NoSuchFieldException {
+        return loadFields(fieldStrings, new MemberTables<>(Class::getDeclaredFields));
+    }
+
+    @NonNull
+    Collection<Field> loadFields(Collection<String> fieldStrings, @NonNull MemberTables<Field> tables) throws ClassNotFoundException, NoSuchFieldException {
+        ArrayList<Field> fields = new ArrayList<>(fieldStrings.size());
+        for (String fieldString : fieldStrings) {
+            fields.add(loadField(fieldString, tables));
+        }
+        return fields;
+    }
+
+    @NonNull
+    Collection<Method> loadMethods(Collection<String> methodStrings) throws ClassNotFoundException, NoSuchMethodException {
+        return loadMethods(methodStrings, new MemberTables<>(Class::getDeclaredMethods));
+    }
+
+    @NonNull
+    Collection<Method> loadMethods(Collection<String> methodStrings, @NonNull MemberTables<Method> tables) throws ClassNotFoundException, NoSuchMethodException {
+        ArrayList<Method> methods = new ArrayList<>(methodStrings.size());
+        for (String methodString : methodStrings) {
+            methods.add(loadMethod(methodString, tables));
+        }
+        return methods;
+    }
+
+    @NonNull
+    Collection<Constructor<?>> loadConstructors(Collection<String> constructorStrings) throws ClassNotFoundException, NoSuchMethodException {
+        return loadConstructors(constructorStrings, new MemberTables<>(Class::getDeclaredConstructors));
+    }
+
+    @NonNull
+    Collection<Constructor<?>> loadConstructors(Collection<String> constructorStrings, @NonNull MemberTables<Constructor<?>> tables) throws ClassNotFoundException, NoSuchMethodException {
+        ArrayList<Constructor<?>> constructors = new ArrayList<>(constructorStrings.size());
+        for (String constructorString : constructorStrings) {
+            constructors.add(loadConstructor(constructorString, tables));
+        }
+        return constructors;
+    }
+
+    @NonNull
+    private Field loadField(@NonNull String fieldString, @Nullable MemberTables<Field> tables) throws ClassNotFoundException, NoSuchFieldException {
+        var field = fieldSignatures.peek(fieldString);
+        if (field != null) return field;
+        final var length = fieldString.length();
         Class<?> declaringClass;
         String name;
         Class<?> type = null;
         var sep = fieldString.lastIndexOf("->");
         if (sep > 0) {
-            var className = fieldString.substring(0, sep);
-            var signature = fieldString.substring(sep + 2);
-            declaringClass = loadClass(className);
-            sep = signature.indexOf(':');
-            if (sep > 0) {
-                var typeName = signature.substring(sep + 1);
-                type = primitiveClassMap.get(typeName.charAt(0));
-                if (type == null) {
-                    type = loadClass(typeName);
-                }
+            declaringClass = loadType(fieldString, 0, sep);
+            var colon = fieldString.indexOf(':', sep + 2);
+            if (colon > 0) {
+                type = loadType(fieldString, colon + 1, length);
             } else {
-                sep = signature.length();
+                colon = length;
             }
-            name = signature.substring(0, sep);
+            name = fieldString.substring(sep + 2, colon);
         } else {
             var lastSpace = fieldString.lastIndexOf(' ');
             if (lastSpace > 0) {
                 var secondLastSpace = fieldString.lastIndexOf(' ', lastSpace - 1);
-                var typeName = fieldString.substring(secondLastSpace + 1, lastSpace);
-                type = primitiveClassMap.get(typeName.charAt(0));
-                if (type == null) {
-                    type = loadClass(typeName);
-                }
+                type = loadType(fieldString, secondLastSpace + 1, lastSpace);
             }
             var lastDot = fieldString.lastIndexOf('.');
             if (lastDot < 0) {
                 throw new NoSuchFieldException(fieldString);
             }
-            declaringClass = loadClass(fieldString.substring(lastSpace + 1, lastDot));
+            declaringClass = loadType(fieldString, lastSpace + 1, lastDot);
             name = fieldString.substring(lastDot + 1);
         }
-        var key = new MemberKey.Field(declaringClass, name);
-        WeakReference<Field> ref;
-        synchronized (fieldCache) {
-            ref = fieldCache.get(key);
+        final var probe = MemberKey.probe(declaringClass, name, null);
+        try {
+            field = fieldCache.get(probe, MemberKey::copy, k -> {
+                Field f;
+                final var begin = System.nanoTime();
+                try {
+                    if (tables != null) {
+                        f = tables.get(declaringClass).find(name, null);
+                        if (f == null) throw new NoSuchFieldException(name);
+                    } else {
+                        f = declaringClass.getDeclaredField(name);
+                    }
+                } finally {
+                    declaredFieldLatency.record(System.nanoTime() - begin);
+                }
+                f.setAccessible(true);
+                return f;
+            });
+        } finally {
+            probe.clear();
         }
-        if (ref == EMPTY) {
+        if (field == null || (type != null && field.getType() != type)) {
             throw new NoSuchFieldException(fieldString);
         }
-        var field = ref != null ? ref.get() : null;
-        if (field == null) {
-            try {
-                field = declaringClass.getDeclaredField(name);
-                if (type != null && field.getType() != type) {
-                    throw new NoSuchFieldException(fieldString);
-                }
-            } catch (NoSuchFieldException e) {
-                synchronized (fieldCache) {
-                    //noinspection unchecked
-                    fieldCache.put(key, (WeakReference<Field>) EMPTY);
-                }
-                throw e;
-            }
-            field.setAccessible(true);
-            synchronized (fieldCache) {
-                fieldCache.put(key, new WeakReference<>(field));
-            }
-        }
+        fieldSignatures.put(fieldString, field);
         return field;
     }
 
     @NonNull
-    Method loadMethod(@NonNull String methodString) throws ClassNotFoundException, NoSuchMethodException {
+    private Method loadMethod(@NonNull String methodString, @Nullable MemberTables<Method> tables) throws ClassNotFoundException, NoSuchMethodException {
+        var method = methodSignatures.peek(methodString);
+        if (method != null) return method;
+        var start = methodString.indexOf('(');
+        var end = methodString.lastIndexOf(')');
+        if (start < 0 || end < start) {
+            throw new NoSuchMethodException(methodString);
+        }
         Class<?> declaringClass;
         String name;
-        ArrayList<Class<?>> parameterTypes = new ArrayList<>();
         Class<?> returnType = null;
-        var sep = methodString.lastIndexOf("->");
+        Class<?>[] parameterTypes;
+        var sep = methodString.lastIndexOf("->", start);
         if (sep > 0) {
-            var className = methodString.substring(0, sep);
-            var signature = methodString.substring(sep + 2);
-            declaringClass = loadClass(className);
-            var start = signature.indexOf('(');
-            var end = signature.lastIndexOf(')');
-            if (start < 0 || end < 0 || end < start) {
-                throw new NoSuchMethodException(methodString);
-            }
-            var returnTypeName = signature.substring(end + 1).trim();
-            if (!returnTypeName.isEmpty()) {
-                returnType = primitiveClassMap.get(returnTypeName.charAt(0));
-                if (returnType == null) {
-                    returnType = loadClass(returnTypeName);
-                }
-            }
-            name = signature.substring(0, start);
-            var params = signature.substring(start + 1, end);
-            int idx = 0;
-            while (idx < params.length()) {
-                var ch = params.charAt(idx);
-                String paramName;
-                if (ch == 'L') {
-                    var endIdx = params.indexOf(';', idx);
-                    if (endIdx < 0) {
-                        throw new NoSuchMethodException(methodString);
-                    }
-                    paramName = params.substring(idx, endIdx + 1);
-                    idx = endIdx + 1;
-                } else if (ch == '[') {
-                    var endIdx = idx + 1;
-                    while (endIdx < params.length() && params.charAt(endIdx) == '[') {
-                        endIdx++;
-                    }
-                    if (endIdx >= params.length()) {
-                        throw new NoSuchMethodException(methodString);
-                    }
-                    ch = params.charAt(endIdx);
-                    if (ch == 'L') {
-                        endIdx = params.indexOf(';', endIdx);
-                    }
-                    if (endIdx >= params.length()) {
-                        throw new NoSuchMethodException(methodString);
-                    }
-                    paramName = params.substring(idx, endIdx + 1);
-                    idx = endIdx + 1;
-                } else {
-                    parameterTypes.add(primitiveClassMap.get(ch));
-                    idx++;
-                    continue;
-                }
-                parameterTypes.add(loadClass(paramName));
+            declaringClass = loadType(methodString, 0, sep);
+            name = methodString.substring(sep + 2, start);
+            parameterTypes = loadDescriptorTypes(methodString, start + 1, end);
+            if (!isBlank(methodString, end + 1, methodString.length())) {
+                returnType = loadType(methodString, end + 1, methodString.length());
             }
         } else {
-            var start = methodString.indexOf('(');
-            var end = methodString.lastIndexOf(')');
-            if (start < 0 || end < 0 || end < start) {
-                throw new NoSuchMethodException(methodString);
-            }
             var lastSpace = methodString.lastIndexOf(' ', start);
             if (lastSpace > 0) {
                 var secondLastSpace = methodString.lastIndexOf(' ', lastSpace - 1);
-                var returnTypeName = methodString.substring(secondLastSpace + 1, lastSpace);
-                var returnTypeAbbr = abbreviationMap.get(returnTypeName);
-                if (returnTypeAbbr != null) {
-                    returnType = primitiveClassMap.get(returnTypeAbbr);
-                } else {
-                    returnType = loadClass(returnTypeName);
-                }
+                returnType = loadType(methodString, secondLastSpace + 1, lastSpace);
             }
             var lastDot = methodString.lastIndexOf('.', start);
             if (lastDot < 0) {
                 throw new NoSuchMethodException(methodString);
             }
             name = methodString.substring(lastDot + 1, start);
-            declaringClass = loadClass(methodString.substring(lastSpace + 1, lastDot));
-            var params = methodString.substring(start + 1, end);
-            int idx = 0;
-            while (idx < params.length()) {
-                var nextComma = params.indexOf(',', idx);
-                if (nextComma < 0) {
-                    nextComma = params.length();
-                }
-                var paramName = params.substring(idx, nextComma).trim();
-                idx = nextComma + 1;
-                var paramAbbr = abbreviationMap.get(paramName);
-                if (paramAbbr != null) {
-                    parameterTypes.add(primitiveClassMap.get(paramAbbr));
-                } else {
-                    parameterTypes.add(loadClass(paramName));
-                }
-            }
+            declaringClass = loadType(methodString, lastSpace + 1, lastDot);
+            parameterTypes = loadJavaTypes(methodString, start + 1, end);
         }
-        var parameterTypesArray = parameterTypes.toArray(new Class<?>[0]);
-        var key = new MemberKey.Method(declaringClass, name, parameterTypesArray);
-        WeakReference<Method> ref;
-        synchronized (methodCache) {
-            ref = methodCache.get(key);
+        final var probe = MemberKey.probe(declaringClass, name, parameterTypes);
+        try {
+            method = methodCache.get(probe, MemberKey::copy, k -> {
+                Method m;
+                final var begin = System.nanoTime();
+                try {
+                    if (tables != null) {
+                        m = tables.get(declaringClass).find(name, parameterTypes);
+                        if (m == null) throw new NoSuchMethodException(name);
+                    } else {
+                        m = declaringClass.getDeclaredMethod(name, parameterTypes);
+                    }
+                } finally {
+                    declaredMethodLatency.record(System.nanoTime() - begin);
+                }
+                m.setAccessible(true);
+                return m;
+            });
+        } finally {
+            probe.clear();
         }
-        if (ref == EMPTY) {
+        if (method == null || (returnType != null && !returnType.equals(method.getReturnType()))) {
             throw new NoSuchMethodException(methodString);
         }
-        Method method = ref == null ? null : ref.get();
-        if (method == null) {
-            try {
-                method = declaringClass.getDeclaredMethod(name, parameterTypesArray);
-                if (returnType != null && !returnType.equals(method.getReturnType())) {
-                    throw new NoSuchMethodException(methodString);
-                }
-            } catch (NoSuchMethodException e) {
-                synchronized (methodCache) {
-                    //noinspection unchecked
-                    methodCache.put(key, (WeakReference<Method>) EMPTY);
-                }
-                throw e;
-            }
-            method.setAccessible(true);
-            synchronized (methodCache) {
-                methodCache.put(key, new WeakReference<>(method));
-            }
-        }
+        methodSignatures.put(methodString, method);
         return method;
     }
 
     @NonNull
-    Constructor<?> loadConstructor(@NonNull String constructorString) throws ClassNotFoundException, NoSuchMethodException {
+    private Constructor<?> loadConstructor(@NonNull String constructorString, @Nullable MemberTables<Constructor<?>> tables) throws ClassNotFoundException, NoSuchMethodException {
+        var constructor = constructorSignatures.peek(constructorString);
+        if (constructor != null) return constructor;
+        var start = constructorString.indexOf('(');
+        var end = constructorString.lastIndexOf(')');
+        if (start < 0 || end < start) {
+            throw new NoSuchMethodException(constructorString);
+        }
         Class<?> declaringClass;
-        ArrayList<Class<?>> parameterTypes = new ArrayList<>();
-        var sep = constructorString.lastIndexOf("->");
+        Class<?>[] parameterTypes;
+        var sep = constructorString.lastIndexOf("->", start);
         if (sep > 0) {
-            var className = constructorString.substring(0, sep);
-            var signature = constructorString.substring(sep + 2);
-            declaringClass = loadClass(className);
-            var start = signature.indexOf('(');
-            var end = signature.lastIndexOf(')');
-            if (start < 0 || end < 0 || end < start) {
-                throw new NoSuchMethodException(constructorString);
-            }
-            var returnTypeName = signature.substring(end + 1).trim();
-            if (!returnTypeName.isEmpty() && !"V".equals(returnTypeName)) {
+            if (start - sep - 2 != 6 || !constructorString.startsWith("<init>", sep + 2)) {
                 throw new NoSuchMethodException(constructorString);
             }
-            var name = signature.substring(0, start);
-            if (!"<init>".equals(name)) {
-                throw new NoSuchMethodException(constructorString);
-            }
-            var params = signature.substring(start + 1, end);
-            int idx = 0;
-            while (idx < params.length()) {
-                var ch = params.charAt(idx);
-                String paramName;
-                if (ch == 'L') {
-                    var endIdx = params.indexOf(';', idx);
-                    if (endIdx < 0) {
-                        throw new NoSuchMethodException(constructorString);
-                    }
-                    paramName = params.substring(idx, endIdx + 1);
-                    idx = endIdx + 1;
-                } else if (ch == '[') {
-                    var endIdx = idx + 1;
-                    while (endIdx < params.length() && params.charAt(endIdx) == '[') {
-                        endIdx++;
-                    }
-                    if (endIdx >= params.length()) {
-                        throw new NoSuchMethodException(constructorString);
-                    }
-                    ch = params.charAt(endIdx);
-                    if (ch == 'L') {
-                        endIdx = params.indexOf(';', endIdx);
-                    }
-                    if (endIdx >= params.length()) {
-                        throw new NoSuchMethodException(constructorString);
-                    }
-                    paramName = params.substring(idx, endIdx + 1);
-                    idx = endIdx + 1;
-                } else {
-                    parameterTypes.add(primitiveClassMap.get(ch));
-                    idx++;
-                    continue;
+            var length = constructorString.length();
+            if (!isBlank(constructorString, end + 1, length)) {
+                var returnType = loadType(constructorString, end + 1, length);
+                if (returnType != void.class) {
+                    throw new NoSuchMethodException(constructorString);
                 }
-                parameterTypes.add(loadClass(paramName));
             }
+            declaringClass = loadType(constructorString, 0, sep);
+            parameterTypes = loadDescriptorTypes(constructorString, start + 1, end);
         } else {
-            var start = constructorString.indexOf('(');
-            var end = constructorString.lastIndexOf(')');
-            if (start < 0 || end < 0 || end < start) {
-                throw new NoSuchMethodException(constructorString);
-            }
-            declaringClass = loadClass(constructorString.substring(0, start));
-            var params = constructorString.substring(start + 1, end);
-            int idx = 0;
-            while (idx < params.length()) {
-                var nextComma = params.indexOf(',', idx);
-                if (nextComma < 0) {
-                    nextComma = params.length();
-                }
-                var paramName = params.substring(idx, nextComma).trim();
-                idx = nextComma + 1;
-                var paramAbbr = abbreviationMap.get(paramName);
-                if (paramAbbr != null) {
-                    parameterTypes.add(primitiveClassMap.get(paramAbbr));
-                } else {
-                    parameterTypes.add(loadClass(paramName));
-                }
-            }
+            declaringClass = loadType(constructorString, 0, start);
+            parameterTypes = loadJavaTypes(constructorString, start + 1, end);
         }
-        var parameterTypesArray = parameterTypes.toArray(new Class<?>[0]);
-        var key = new MemberKey.Constructor(declaringClass, parameterTypesArray);
-        WeakReference<Constructor<?>> ref;
-        synchronized (constructorCache) {
-            ref = constructorCache.get(key);
+        final var probe = MemberKey.probe(declaringClass, null, parameterTypes);
+        try {
+            constructor = constructorCache.get(probe, MemberKey::copy, k -> {
+                Constructor<?> c;
+                final var begin = System.nanoTime();
+                try {
+                    if (tables != null) {
+                        c = tables.get(declaringClass).find("<init>", parameterTypes);
+                        if (c == null) throw new NoSuchMethodException("<init>");
+                    } else {
+                        c = declaringClass.getDeclaredConstructor(parameterTypes);
+                    }
+                } finally {
+                    declaredConstructorLatency.record(System.nanoTime() - begin);
+                }
+                c.setAccessible(true);
+                return c;
+            });
+        } finally {
+            probe.clear();
         }
-        if (ref == EMPTY) {
+        if (constructor == null) {
             throw new NoSuchMethodException(constructorString);
         }
-        Constructor<?> constructor = ref == null ? null : ref.get();
-        if (constructor == null) {
-            try {
-                constructor = declaringClass.getDeclaredConstructor(parameterTypesArray);
-            } catch (NoSuchMethodException e) {
-                synchronized (constructorCache) {
-                    //noinspection unchecked
-                    constructorCache.put(key, (WeakReference<Constructor<?>>) EMPTY);
-                }
-                throw e;
-            }
-            constructor.setAccessible(true);
-            synchronized (constructorCache) {
-                constructorCache.put(key, new WeakReference<>(constructor));
+        constructorSignatures.put(constructorString, constructor);
+        return constructor;
+    }
+
+    private static boolean isBlank(@NonNull CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // end of the descriptor starting at start, or -1 if malformed
+    private static int descriptorEnd(@NonNull CharSequence s, int start, int end) {
+        var i = start;
+        while (i < end && s.charAt(i) == '[') i++;
+        if (i >= end) return -1;
+        if (s.charAt(i) != 'L') return i + 1;
+        for (; i < end; i++) {
+            if (s.charAt(i) == ';') return i + 1;
+        }
+        return -1;
+    }
+
+    // parameter types of a descriptor like `ILjava/lang/String;[J`
+    @NonNull
+    private Class<?>[] loadDescriptorTypes(@NonNull String s, int start, int end) throws ClassNotFoundException {
+        var count = 0;
+        for (var i = start; i < end; count++) {
+            i = descriptorEnd(s, i, end);
+            if (i < 0) throw new ClassNotFoundException(s.substring(start, end));
+        }
+        var types = new Class<?>[count];
+        for (int i = start, n = 0; n < count; n++) {
+            var next = descriptorEnd(s, i, end);
+            types[n] = loadType(s, i, next);
+            i = next;
+        }
+        return types;
+    }
+
+    // parameter types of a java parameter list like `int, java.lang.String, long[]`
+    @NonNull
+    private Class<?>[] loadJavaTypes(@NonNull String s, int start, int end) throws ClassNotFoundException {
+        if (isBlank(s, start, end)) return new Class<?>[0];
+        var count = 1;
+        for (var i = start; i < end; i++) {
+            if (s.charAt(i) == ',') count++;
+        }
+        var types = new Class<?>[count];
+        for (int i = start, n = 0; n < count; n++) {
+            var next = s.indexOf(',', i);
+            if (next < 0 || next > end) next = end;
+            types[n] = loadType(s, i, next);
+            i = next + 1;
+        }
+        return types;
+    }
+
+    @NonNull
+    private Class<?> loadType(@NonNull String s, int start, int end) throws ClassNotFoundException {
+        var clazz = findType(s, start, end);
+        if (clazz == null) throw new ClassNotFoundException(s.substring(start, end).trim());
+        return clazz;
+    }
+
+    // finds a descriptor or java type name in [start, end), null if not found
+    @Nullable
+    private Class<?> findType(@NonNull String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) end--;
+        if (start >= end) {
+            return null;
+        }
+        var first = s.charAt(start);
+        if (end - start == 1) {
+            var primitive = primitiveClassMap.get(first);
+            if (primitive != null) return primitive;
+        }
+        var name = new StringBuilder(end - start + 2);
+        if (first == 'L' && s.charAt(end - 1) == ';') {
+            appendName(name, s, start + 1, end - 1);
+        } else if (first == '[') {
+            appendName(name, s, start, end);
+        } else {
+            var componentEnd = end;
+            while (componentEnd - start > 2 && s.charAt(componentEnd - 1) == ']' && s.charAt(componentEnd - 2) == '[') {
+                componentEnd -= 2;
+                name.append('[');
+            }
+            var abbr = javaPrimitive(s, start, componentEnd);
+            if (name.length() == 0) {
+                if (abbr != null) return primitiveClassMap.get(abbr);
+                appendName(name, s, start, componentEnd);
+            } else if (abbr != null) {
+                name.append(abbr);
+            } else {
+                appendName(name.append('L'), s, start, componentEnd).append(';');
             }
         }
-        return constructor;
+        return findClass(name.toString());
+    }
+
+    @Nullable
+    private static Character javaPrimitive(@NonNull String s, int start, int end) {
+        var length = end - start;
+        if (length > 7) return null;
+        for (var e : abbreviationMap.entrySet()) {
+            var name = e.getKey();
+            if (name.length() == length && s.startsWith(name, start)) return e.getValue();
+        }
+        return null;
     }
 
     @NonNull
-    Collection<Class<?>> loadClasses(Collection<String> classNames) throws ClassNotFoundException {
-        ArrayList<Class<?>> classes = new ArrayList<>();
-        for (String className : classNames) {
-            classes.add(loadClass(className));
+    private static StringBuilder appendName(@NonNull StringBuilder sb, @NonNull CharSequence s, int start, int end) {
+        for (var i = start; i < end; i++) {
+            var ch = s.charAt(i);
+            sb.append(ch == '/' ? '.' : ch);
+        }
+        return sb;
+    }
+
+    // binary name as accepted by Class.forName, falls back to nested classes for `a.b.C.D`;
+    // candidates already known to be missing are skipped without touching the class loader
+    @Nullable
+    private Class<?> findClass(@NonNull String className) {
+        var candidate = className;
+        while (true) {
+            if (!classCache.isNegative(candidate)) {
+                var clazz = classCache.get(candidate, name -> {
+                    final var begin = System.nanoTime();
+                    try {
+                        return Class.forName(name, false, classLoader);
+                    } finally {
+                        forNameLatency.record(System.nanoTime() - begin);
+                    }
+                });
+                if (clazz != null) return clazz;
+            }
+            // for arrays only dots inside the element name `[La.b.C;` are candidates
+            final int nameStart = candidate.charAt(0) == '[' ? candidate.indexOf('L') + 1 : 0;
+            final int lastDot = candidate.lastIndexOf('.');
+            if (lastDot <= nameStart) return null;
+            candidate = candidate.substring(0, lastDot) + '$' + candidate.substring(lastDot + 1);
         }
-        return classes;
     }
 
     @NonNull
-    Collection<Field> loadFields(Collection<String> fieldStrings) throws ClassNotFoundException, NoSuchFieldException {
-        ArrayList<Field> fields = new ArrayList<>();
-        for (String fieldString : fieldStrings) {
-            fields.add(loadField(fieldString));
+    static String getDescriptor(@NonNull Class<?> clazz) {
+        if (clazz.isPrimitive()) {
+            return String.valueOf(abbreviationMap.get(clazz.getName()));
+        } else if (clazz.isArray()) {
+            return clazz.getName().replace('.', '/');
         }
-        return fields;
+        return 'L' + clazz.getName().replace('.', '/') + ';';
     }
 
     @NonNull
-    Collection<Method> loadMethods(Collection<String> methodStrings) throws ClassNotFoundException, NoSuchMethodException {
-        ArrayList<Method> methods = new ArrayList<>();
-        for (String methodString : methodStrings) {
-            methods.add(loadMethod(methodString));
+    static String getSignature(@NonNull Field field) {
+        return getDescriptor(field.getDeclaringClass()) + "->" + field.getName() + ':' + getDescriptor(field.getType());
+    }
+
+    @NonNull
+    static String getSignature(@NonNull Method method) {
+        var sb = new StringBuilder(getDescriptor(method.getDeclaringClass())).append("->").append(method.getName()).append('(');
+        for (var parameterType : method.getParameterTypes()) {
+            sb.append(getDescriptor(parameterType));
         }
-        return methods;
+        return sb.append(')').append(getDescriptor(method.getReturnType())).toString();
     }
 
     @NonNull
-    Collection<Constructor<?>> loadConstructors(Collection<String> constructorStrings) throws ClassNotFoundException, NoSuchMethodException {
-        ArrayList<Constructor<?>> constructors = new ArrayList<>();
-        for (String constructorString : constructorStrings) {
-            constructors.add(loadConstructor(constructorString));
+    static String getSignature(@NonNull Constructor<?> constructor) {
+        var sb = new StringBuilder(getDescriptor(constructor.getDeclaringClass())).append("-><init>(");
+        for (var parameterType : constructor.getParameterTypes()) {
+            sb.append(getDescriptor(parameterType));
         }
-        return constructors;
+        return sb.append(")V").toString();
     }
 
-    abstract static class MemberKey {
-        private final int hash;
+    interface Resolver<K, V> {
+        @NonNull
+        V resolve(@NonNull K key) throws ReflectiveOperationException;
+    }
 
-        protected MemberKey(int hash) {
-            this.hash = hash;
+    // each key is resolved by one caller at a time, others wait for the in-flight result;
+    // recently used values are pinned in a bounded strong tier and the rest are weakly held,
+    // misses are remembered up to a limit
+    static final class Cache<K, V> {
+        static final int DEFAULT_STRONG_LIMIT = 256;
+        static final int DEFAULT_NEGATIVE_LIMIT = 4096;
+        private static final Object NEGATIVE = new Object();
+        private final ConcurrentHashMap<K, Object> map = new ConcurrentHashMap<>();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong negativeHits = new AtomicLong();
+        private final AtomicLong weakClears = new AtomicLong();
+        // entries whose value was cleared, dropped with their keys as those may keep classes reachable
+        private final ReferenceQueue<V> cleared = new ReferenceQueue<>();
+        // misses in insertion order, the oldest are dropped beyond the limit
+        private final ConcurrentLinkedQueue<K> negatives = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger negativeCount = new AtomicInteger();
+        private volatile int negativeLimit = DEFAULT_NEGATIVE_LIMIT;
+        // strong tier evicted by CLOCK, guarded by this
+        @SuppressWarnings("unchecked")
+        private Entry<V>[] clock = new Entry[DEFAULT_STRONG_LIMIT];
+        private int hand;
+
+        @Nullable
+        V get(@NonNull K key, @NonNull Resolver<K, V> resolver) {
+            return get(key, UnaryOperator.identity(), resolver);
         }
 
-        protected static String[] getClassNames(Class<?>[] classes) {
-            String[] classNames = new String[classes.length];
-            for (int i = 0; i < classes.length; i++) {
-                classNames[i] = classes[i].getName();
+        // `probe` may be a reused key, `freeze` turns it into one that is safe to store
+        @Nullable
+        V get(@NonNull K probe, @NonNull UnaryOperator<K> freeze, @NonNull Resolver<K, V> resolver) {
+            expunge();
+            K key = null;
+            while (true) {
+                final var value = map.get(probe);
+                if (value == NEGATIVE) {
+                    negativeHits.incrementAndGet();
+                    return null;
+                }
+                if (value instanceof FutureTask) {
+                    hits.incrementAndGet();
+                    //noinspection unchecked
+                    return await(key != null ? key : freeze.apply(probe), (FutureTask<V>) value);
+                }
+                if (value != null) {
+                    //noinspection unchecked
+                    final var entry = (Entry<V>) value;
+                    final var cached = entry.get();
+                    if (cached != null) {
+                        hits.incrementAndGet();
+                        touch(entry, cached);
+                        return cached;
+                    }
+                }
+                if (key == null) key = freeze.apply(probe);
+                final var stored = key;
+                final var task = new FutureTask<>(() -> {
+                    try {
+                        return resolver.resolve(stored);
+                    } catch (ReflectiveOperationException e) {
+                        return null;
+                    }
+                });
+                if (value == null ? map.putIfAbsent(key, task) != null : !map.replace(key, value, task)) {
+                    continue;
+                }
+                if (value == null) misses.incrementAndGet();
+                else weakClears.incrementAndGet();
+                task.run();
+                return await(key, task);
             }
-            return classNames;
         }
 
-        @Override
-        public int hashCode() {
-            return hash;
+        @Nullable
+        V peek(@NonNull K key) {
+            expunge();
+            final var value = map.get(key);
+            if (!(value instanceof Entry)) return null;
+            //noinspection unchecked
+            final var entry = (Entry<V>) value;
+            final var cached = entry.get();
+            if (cached != null) {
+                hits.incrementAndGet();
+                touch(entry, cached);
+            }
+            return cached;
         }
 
-        @Override
-        public abstract boolean equals(@Nullable Object obj);
+        boolean isNegative(@NonNull K key) {
+            if (map.get(key) != NEGATIVE) return false;
+            negativeHits.incrementAndGet();
+            return true;
+        }
 
-        static class Field extends MemberKey {
-            private final String declaringClass;
-            private final String name;
+        @NonNull
+        CacheStatsImpl getStats() {
+            return new CacheStatsImpl(hits.get(), misses.get(), negativeHits.get(), weakClears.get());
+        }
 
-            protected Field(String declaringClass, String name) {
-                super(Objects.hash(declaringClass, name));
-                this.declaringClass = declaringClass;
-                this.name = name;
+        void put(@NonNull K key, @NonNull V value) {
+            expunge();
+            final var old = map.get(key);
+            if (old instanceof Entry) {
+                //noinspection unchecked
+                final var entry = (Entry<V>) old;
+                if (entry.get() == value) {
+                    touch(entry, value);
+                    return;
+                }
             }
+            final var entry = new Entry<>(key, value, cleared);
+            final var replaced = map.put(key, entry);
+            // the replaced entry must not keep a slot of the strong tier
+            //noinspection unchecked
+            if (replaced instanceof Entry) unpin((Entry<V>) replaced);
+            pin(entry, value);
+        }
 
-            protected Field(Class<?> declaringClass, String name) {
-                this(declaringClass.getName(), name);
-            }
+        void putNegative(@NonNull K key) {
+            map.put(key, NEGATIVE);
+            remember(key);
+        }
 
-            @Override
-            public boolean equals(@Nullable Object obj) {
-                if (obj == this) {
-                    return true;
-                }
-                if (obj instanceof Field) {
-                    Field other = (Field) obj;
-                    return Objects.equals(other.declaringClass, declaringClass) && Objects.equals(other.name, name);
-                }
-                return false;
+        synchronized void setLimits(int strongLimit, int negativeLimit) {
+            for (var entry : clock) {
+                if (entry != null) entry.strong = null;
+            }
+            //noinspection unchecked
+            clock = new Entry[strongLimit];
+            hand = 0;
+            this.negativeLimit = negativeLimit;
+            while (negativeCount.get() > negativeLimit) {
+                if (!forgetOldest()) break;
             }
         }
 
-        static class Constructor extends MemberKey {
-            protected final String declaringClass;
-            protected final String[] parameterTypes;
+        private void touch(@NonNull Entry<V> entry, @NonNull V value) {
+            if (entry.strong != null) entry.referenced = true;
+            else pin(entry, value);
+        }
+
+        private synchronized void pin(@NonNull Entry<V> entry, @NonNull V value) {
+            if (entry.strong != null || clock.length == 0) return;
+            var victim = clock[hand];
+            while (victim != null && victim.referenced) {
+                victim.referenced = false;
+                hand = (hand + 1) % clock.length;
+                victim = clock[hand];
+            }
+            if (victim != null) victim.strong = null;
+            entry.strong = value;
+            clock[hand] = entry;
+            hand = (hand + 1) % clock.length;
+        }
 
-            protected Constructor(String declaringClass, String[] parameterTypes) {
-                super(31 * Objects.hash(declaringClass) + Arrays.hashCode(parameterTypes));
-                this.declaringClass = declaringClass;
-                this.parameterTypes = parameterTypes;
+        private synchronized void unpin(@NonNull Entry<V> entry) {
+            if (entry.strong == null) return;
+            entry.strong = null;
+            for (var i = 0; i < clock.length; ++i) {
+                if (clock[i] == entry) {
+                    clock[i] = null;
+                    return;
+                }
             }
+        }
 
-            protected Constructor(Class<?> declaringClass, Class<?>[] parameterTypes) {
-                this(declaringClass.getName(), getClassNames(parameterTypes));
+        private void expunge() {
+            Reference<? extends V> reference;
+            while ((reference = cleared.poll()) != null) {
+                final var entry = (Entry<?>) reference;
+                if (map.remove(entry.key, entry)) weakClears.incrementAndGet();
             }
+        }
 
-            @Override
-            public boolean equals(@Nullable Object obj) {
-                if (obj == this) {
-                    return true;
-                }
-                if (obj instanceof Constructor) {
-                    Constructor other = (Constructor) obj;
-                    return Objects.equals(other.declaringClass, declaringClass) && Arrays.equals(other.parameterTypes, parameterTypes);
+        private void remember(@NonNull K key) {
+            negatives.add(key);
+            if (negativeCount.incrementAndGet() > negativeLimit) forgetOldest();
+        }
+
+        private boolean forgetOldest() {
+            final var oldest = negatives.poll();
+            if (oldest == null) return false;
+            negativeCount.decrementAndGet();
+            map.remove(oldest, NEGATIVE);
+            return true;
+        }
+
+        @Nullable
+        private V await(@NonNull K key, @NonNull FutureTask<V> task) {
+            var interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        final var result = task.get();
+                        if (result == null) {
+                            if (map.replace(key, task, NEGATIVE)) remember(key);
+                        } else {
+                            final var entry = new Entry<>(key, result, cleared);
+                            if (map.replace(key, task, entry)) pin(entry, result);
+                        }
+                        return result;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        // not a miss, let the next caller retry
+                        map.remove(key, task);
+                        final var cause = e.getCause();
+                        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                        if (cause instanceof Error) throw (Error) cause;
+                        throw new IllegalStateException(cause);
+                    }
                 }
-                return false;
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
             }
         }
 
-        static class Method extends MemberKey {
-            protected final String declaringClass;
-            protected final String name;
-            protected final String[] parameterTypes;
+        private static final class Entry<V> extends WeakReference<V> {
+            @NonNull
+            final Object key;
+            // set while the value is in the strong tier
+            @Nullable
+            volatile V strong;
+            volatile boolean referenced;
 
-            protected Method(String declaringClass, String name, String[] parameterTypes) {
-                super(31 * Objects.hash(declaringClass, name) + Arrays.hashCode(parameterTypes));
-                this.declaringClass = declaringClass;
-                this.name = name;
-                this.parameterTypes = parameterTypes;
+            private Entry(@NonNull Object key, @NonNull V value, @NonNull ReferenceQueue<? super V> queue) {
+                super(value, queue);
+                this.key = key;
             }
+        }
+    }
 
-            protected Method(Class<?> declaringClass, String name, Class<?>[] parameterTypes) {
-                this(declaringClass.getName(), name, getClassNames(parameterTypes));
-            }
+    static final class Latency {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(LatencyHistogramImpl.BUCKETS);
 
-            @Override
-            public boolean equals(@Nullable Object obj) {
-                if (obj == this) {
-                    return true;
-                }
-                if (obj instanceof Method) {
-                    Method other = (Method) obj;
-                    return Objects.equals(other.declaringClass, declaringClass) && Objects.equals(other.name, name) && Arrays.equals(other.parameterTypes, parameterTypes);
-                }
-                return false;
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            buckets.incrementAndGet(LatencyHistogramImpl.bucketOf(nanos));
+        }
+
+        @NonNull
+        LatencyHistogramImpl getHistogram() {
+            var buckets = new long[LatencyHistogramImpl.BUCKETS];
+            for (var i = 0; i < buckets.length; i++) buckets[i] = this.buckets.get(i);
+            return new LatencyHistogramImpl(count.get(), totalNanos.get(), buckets);
+        }
+    }
+
+    // keyed by class identity, which is stable within one class loader; lookups probe with a
+    // reused per-thread key and only a miss stores a copy
+    static final class MemberKey {
+        private static final ThreadLocal<MemberKey> probes = ThreadLocal.withInitial(MemberKey::new);
+        private Class<?> declaringClass;
+        @Nullable
+        private String name;
+        @Nullable
+        private Class<?>[] parameterTypes;
+        private int hash;
+
+        private MemberKey() {
+        }
+
+        @NonNull
+        static MemberKey probe(@NonNull Class<?> declaringClass, @Nullable String name, @Nullable Class<?>[] parameterTypes) {
+            final var probe = probes.get();
+            probe.declaringClass = declaringClass;
+            probe.name = name;
+            probe.parameterTypes = parameterTypes;
+            var hash = declaringClass.hashCode();
+            hash = 31 * hash + (name == null ? 0 : name.hashCode());
+            if (parameterTypes != null) {
+                for (var type : parameterTypes) hash = 31 * hash + type.hashCode();
+            }
+            probe.hash = hash;
+            return probe;
+        }
+
+        // the probe outlives the lookup in its thread, so it must not keep the classes reachable
+        void clear() {
+            declaringClass = null;
+            name = null;
+            parameterTypes = null;
+        }
+
+        @NonNull
+        MemberKey copy() {
+            final var key = new MemberKey();
+            key.declaringClass = declaringClass;
+            key.name = name;
+            key.parameterTypes = parameterTypes;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof MemberKey) {
+                MemberKey other = (MemberKey) obj;
+                return other.hash == hash && other.declaringClass == declaringClass && Objects.equals(other.name, name) && Arrays.equals(other.parameterTypes, parameterTypes);
             }
+            return false;
         }
     }
 }
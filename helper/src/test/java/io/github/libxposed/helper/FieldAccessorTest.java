@@ -0,0 +1,104 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+public class FieldAccessorTest {
+    @SuppressWarnings({"unused", "FieldMayBeFinal"})
+    private static class Sample {
+        static long counter = 1;
+        int primitive = 2;
+        Integer boxed = 3;
+        final int constant;
+        final Object reference;
+
+        Sample(int constant, Object reference) {
+            this.constant = constant;
+            this.reference = reference;
+        }
+    }
+
+    // both implementations, the handle one is only chosen on O and above
+    private static HookBuilder.FieldAccessor[] accessors(String name) throws ReflectiveOperationException {
+        var field = Sample.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return new HookBuilder.FieldAccessor[]{create("ReflectFieldAccessor", field), create("HandleFieldAccessor", field)};
+    }
+
+    private static HookBuilder.FieldAccessor create(String simpleName, Field field) throws ReflectiveOperationException {
+        var clazz = Class.forName(Invokers.class.getName() + "$" + simpleName);
+        Constructor<?> constructor = clazz.getDeclaredConstructor(Field.class);
+        constructor.setAccessible(true);
+        return (HookBuilder.FieldAccessor) constructor.newInstance(field);
+    }
+
+    @Test
+    public void primitiveFieldWidensAndBoxes() throws ReflectiveOperationException {
+        for (var accessor : accessors("primitive")) {
+            var sample = new Sample(0, null);
+            assertEquals(2, accessor.getInt(sample));
+            // other getters go through reflection, which widens
+            assertEquals(2L, accessor.getLong(sample));
+            assertEquals(2.0, accessor.getDouble(sample), 0);
+            assertEquals(2, accessor.get(sample));
+            accessor.setInt(sample, 4);
+            assertEquals(4, sample.primitive);
+            accessor.setShort(sample, (short) 5);
+            assertEquals(5, sample.primitive);
+            accessor.set(sample, 6);
+            assertEquals(6, sample.primitive);
+            // narrowing is rejected
+            assertThrows(IllegalArgumentException.class, () -> accessor.getShort(sample));
+            assertThrows(IllegalArgumentException.class, () -> accessor.setLong(sample, 7L));
+            assertEquals(6, sample.primitive);
+        }
+    }
+
+    @Test
+    public void boxedFieldOnlyAcceptsObjects() throws ReflectiveOperationException {
+        for (var accessor : accessors("boxed")) {
+            var sample = new Sample(0, null);
+            assertEquals(3, accessor.get(sample));
+            accessor.set(sample, 8);
+            assertEquals(Integer.valueOf(8), sample.boxed);
+            // typed accessors never unbox a reference field
+            assertThrows(IllegalArgumentException.class, () -> accessor.getInt(sample));
+            assertThrows(IllegalArgumentException.class, () -> accessor.setInt(sample, 9));
+            assertEquals(Integer.valueOf(8), sample.boxed);
+        }
+    }
+
+    @Test
+    public void staticField() throws ReflectiveOperationException {
+        for (var accessor : accessors("counter")) {
+            Sample.counter = 1;
+            assertEquals(1L, accessor.getLong(null));
+            accessor.setLong(null, 10L);
+            assertEquals(10L, Sample.counter);
+            accessor.setInt(null, 11);
+            assertEquals(11L, accessor.get(null));
+        }
+    }
+
+    @Test
+    public void finalFieldsAreSetByReflection() throws ReflectiveOperationException {
+        for (var accessor : accessors("constant")) {
+            var sample = new Sample(1, null);
+            accessor.setInt(sample, 12);
+            assertEquals(12, accessor.getInt(sample));
+            accessor.set(sample, 13);
+            assertEquals(13, accessor.get(sample));
+        }
+        for (var accessor : accessors("reference")) {
+            var sample = new Sample(1, null);
+            accessor.set(sample, "value");
+            assertEquals("value", accessor.get(sample));
+            assertThrows(IllegalArgumentException.class, () -> accessor.setInt(sample, 1));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import dalvik.system.PathClassLoader;
+import io.github.libxposed.api.XposedInterface;
+
+public class ImplicitKeyTest {
+    @SuppressWarnings("unused")
+    private static class Sample {
+        int field;
+
+        Sample(int value) {
+            field = value;
+        }
+
+        void method(int value) {
+            field = value;
+        }
+    }
+
+    private interface Root<M> {
+        void build(HookBuilderImpl builder, HookBuilder.Consumer<M> consumer);
+    }
+
+    private static HookBuilderImpl newBuilder() {
+        var ctx = (XposedInterface) Proxy.newProxyInstance(XposedInterface.class.getClassLoader(), new Class<?>[]{XposedInterface.class}, (proxy, method, args) -> null);
+        return new HookBuilderImpl(ctx, new PathClassLoader("", ImplicitKeyTest.class.getClassLoader()), "");
+    }
+
+    private static Object invoke(Object target, String name) throws ReflectiveOperationException {
+        for (var clazz = target.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            for (var method : clazz.getDeclaredMethods()) {
+                if (method.getName().equals(name) && method.getParameterTypes().length == 0) {
+                    method.setAccessible(true);
+                    return method.invoke(target);
+                }
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static Object keyOf(Object matcher) throws ReflectiveOperationException {
+        for (var clazz = matcher.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Field key = clazz.getDeclaredField("key");
+                key.setAccessible(true);
+                return key.get(matcher);
+            } catch (NoSuchFieldException ignored) {
+            }
+        }
+        throw new NoSuchFieldException("key");
+    }
+
+    private static Object sample(HookBuilderImpl builder, Class<?> type, java.lang.reflect.Type generic) throws ReflectiveOperationException {
+        if (type == boolean.class) return true;
+        if (type == int.class) return 1;
+        if (type == byte[].class) return new byte[]{1};
+        if (type == HookBuilder.StringMatch.class) return builder.exact("sample");
+        if (type == HookBuilder.ClassMatch.class) return builder.exact(String.class);
+        if (type == HookBuilder.Syntax.class) {
+            var match = (Class<?>) ((ParameterizedType) generic).getActualTypeArguments()[0];
+            var method = Sample.class.getDeclaredMethod("method", int.class);
+            if (match == HookBuilder.StringMatch.class) return builder.exact("sample").observe();
+            if (match == HookBuilder.ClassMatch.class) return builder.exact(String.class).observe();
+            if (match == HookBuilder.FieldMatch.class) return builder.exact(Sample.class.getDeclaredField("field")).observe();
+            if (match == HookBuilder.MethodMatch.class) return builder.exact(method).observe();
+            if (match == HookBuilder.ConstructorMatch.class) return builder.exact(Sample.class.getDeclaredConstructor(int.class)).observe();
+            if (match == HookBuilder.ParameterMatch.class) return builder.exact(method).getParameters().conjunction();
+        }
+        throw new IllegalArgumentException("no sample for " + generic);
+    }
+
+    // every condition must show up in the description, or matchers differing only in it would
+    // share an implicit key and get each other's cached results
+    private static <M> void assertSettersDescribed(Class<M> matcherType, Root<M> root) throws ReflectiveOperationException {
+        var builder = newBuilder();
+        var plain = new AtomicReference<M>();
+        root.build(builder, plain::set);
+        var baseline = invoke(plain.get(), "describe");
+        assertNotNull(baseline);
+        for (var setter : matcherType.getMethods()) {
+            if (!setter.getName().startsWith("set") || setter.getName().equals("setKey")) continue;
+            var args = new Object[setter.getParameterTypes().length];
+            for (var i = 0; i < args.length; ++i) {
+                args[i] = sample(builder, setter.getParameterTypes()[i], setter.getGenericParameterTypes()[i]);
+            }
+            var matcher = new AtomicReference<M>();
+            root.build(builder, m -> {
+                try {
+                    setter.invoke(m, args);
+                } catch (ReflectiveOperationException e) {
+                    throw new AssertionError(e);
+                }
+                matcher.set(m);
+            });
+            assertNotEquals(matcherType.getSimpleName() + "." + setter.getName(), baseline, invoke(matcher.get(), "describe"));
+        }
+    }
+
+    @Test
+    public void everySetterFeedsDescribe() throws ReflectiveOperationException {
+        assertSettersDescribed(HookBuilder.ClassMatcher.class, HookBuilder::classes);
+        assertSettersDescribed(HookBuilder.FieldMatcher.class, HookBuilder::fields);
+        assertSettersDescribed(HookBuilder.MethodMatcher.class, HookBuilder::methods);
+        assertSettersDescribed(HookBuilder.ConstructorMatcher.class, HookBuilder::constructors);
+    }
+
+    @Test
+    public void identicalMatchersGetDistinctKeys() throws ReflectiveOperationException {
+        var builder = newBuilder();
+        var first = new AtomicReference<HookBuilder.ClassMatcher>();
+        var second = new AtomicReference<HookBuilder.ClassMatcher>();
+        builder.classes(m -> first.set(m.setName(builder.exact("a.B"))));
+        builder.classes(m -> second.set(m.setName(builder.exact("a.B"))));
+        assertNotNull(keyOf(first.get()));
+        assertNotEquals(keyOf(first.get()), keyOf(second.get()));
+
+        // the same declarations give the same keys on the next run
+        var again = newBuilder();
+        var rerun = new AtomicReference<HookBuilder.ClassMatcher>();
+        again.classes(m -> m.setName(again.exact("a.B")));
+        again.classes(m -> rerun.set(m.setName(again.exact("a.B"))));
+        assertEquals(keyOf(second.get()), keyOf(rerun.get()));
+    }
+
+    private static Object describeName(HookBuilderImpl builder, HookBuilder.StringMatch name) throws ReflectiveOperationException {
+        var matcher = new AtomicReference<HookBuilder.ClassMatcher>();
+        builder.classes(m -> matcher.set(m.setName(name)));
+        return invoke(matcher.get(), "describe");
+    }
+
+    @Test
+    public void stringMatchKindsAreDescribed() throws ReflectiveOperationException {
+        var builder = newBuilder();
+        assertNotEquals(describeName(builder, builder.prefix("x")), describeName(builder, builder.firstPrefix("x")));
+        assertNotEquals(describeName(builder, builder.prefix("a|b")), describeName(builder, builder.anyPrefix("a", "b")));
+        assertNotEquals(describeName(builder, builder.packageGlob("a|b")), describeName(builder, builder.packageGlob("a", "b")));
+        assertNotEquals(describeName(builder, builder.exact("x")), describeName(builder, builder.firstPrefix("x")));
+        assertEquals(describeName(builder, builder.anyPrefix("b", "a")), describeName(builder, builder.anyPrefix("a", "b")));
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+
+public class MemberTablesTest {
+    @SuppressWarnings("unused")
+    private interface Named {
+        default String name() {
+            return "";
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class Base implements Named {
+        private void hidden() {
+        }
+
+        void visible() {
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class Derived extends Base {
+        private void own() {
+        }
+    }
+
+    @Test
+    public void privateMembersOfSupertypesAreNotInherited() throws NoSuchMethodException {
+        var tables = new MemberTables<Method>(Class::getDeclaredMethods);
+        var flattened = tables.get(Derived.class, true, true);
+        var names = new HashSet<String>();
+        for (var method : flattened.get(null, -1)) names.add(method.getName());
+        assertTrue(names.contains("own"));
+        assertTrue(names.contains("visible"));
+        assertTrue(names.contains("name"));
+        assertFalse(names.contains("hidden"));
+        assertEquals(1, flattened.get("visible", 0).size());
+        assertSame(flattened, tables.get(Derived.class, true, true));
+        // the declared table of the supertype itself still has it
+        assertEquals(Base.class.getDeclaredMethod("hidden"), tables.get(Base.class).find("hidden", new Class<?>[0]));
+    }
+}
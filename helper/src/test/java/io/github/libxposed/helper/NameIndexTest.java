@@ -0,0 +1,90 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+public class NameIndexTest {
+    private static final String[] NAMES = {
+            "Main",
+            "com.foo.A",
+            "com.foo.bar.B",
+            "com.foo.bar.net.C",
+            "com.foo.baz.net.D",
+            "com.foo.net.E",
+            "com.foo.x.y.net.F",
+            "com.foobar.G",
+            "org.H",
+    };
+
+    private static String[] toArray(Iterable<String> view) {
+        var list = new ArrayList<String>();
+        for (var name : view) list.add(name);
+        return list.toArray(new String[0]);
+    }
+
+    @Test
+    public void mergeAllSortsAndDeduplicates() {
+        var merged = TreeSetView.mergeAll(List.of(
+                TreeSetView.ofSorted(new String[]{"a", "c", "e", "g"}),
+                TreeSetView.ofSorted(new String[]{"b", "c", "d"}),
+                TreeSetView.ofSorted(new String[0]),
+                TreeSetView.ofSorted(new String[]{"a", "g", "h"})));
+        assertArrayEquals(new String[]{"a", "b", "c", "d", "e", "g", "h"}, toArray(merged));
+        assertEquals(7, merged.size());
+        assertEquals("a", merged.first());
+        assertEquals("h", merged.last());
+        assertArrayEquals(new String[]{"c", "d", "e"}, toArray(merged.subSet("c", "f")));
+        // the duplicates leave unused slots behind the last element, which no view may reach
+        assertArrayEquals(new String[]{"g", "h"}, toArray(merged.tailSet("f")));
+        assertArrayEquals(new String[]{"a", "b", "c", "d", "e", "g", "h"}, merged.toArray(new String[0]));
+        assertEquals(7, merged.toArray().length);
+    }
+
+    @Test
+    public void mergeAllOfSlices() {
+        var base = TreeSetView.ofSorted(new String[]{"a", "b", "c", "d", "e", "f"});
+        var merged = TreeSetView.mergeAll(List.of(base.subSet("b", "d"), base.subSet("c", "f"), TreeSetView.ofSorted(new String[]{"z"})));
+        assertArrayEquals(new String[]{"b", "c", "d", "e", "z"}, toArray(merged));
+    }
+
+    @Test
+    public void mergeAllOfOneSourceReturnsIt() {
+        var only = TreeSetView.ofSorted(new String[]{"a", "b"});
+        assertSame(only, TreeSetView.mergeAll(List.of(TreeSetView.ofSorted(new String[0]), only)));
+        assertEquals(0, TreeSetView.mergeAll(List.<TreeSetView<String>>of()).size());
+    }
+
+    private static void assertFound(String[] expected, String... globs) {
+        var parsed = PackageIndex.parseGlobs(globs);
+        var found = toArray(new PackageIndex(TreeSetView.ofSorted(NAMES)).find(parsed));
+        assertArrayEquals(String.join(",", globs), expected, found);
+        // the index agrees with matching every name on its own
+        var scanned = new TreeSet<String>();
+        for (var name : NAMES) {
+            if (PackageIndex.matches(parsed, name)) scanned.add(name);
+        }
+        assertArrayEquals(String.join(",", globs), scanned.toArray(new String[0]), found);
+    }
+
+    @Test
+    public void findsPackagesByGlob() {
+        assertFound(new String[]{"Main"}, "");
+        assertFound(new String[]{"com.foo.A"}, "com.foo");
+        assertFound(new String[]{"com.foo.bar.B", "com.foo.net.E"}, "com.foo.*");
+        assertFound(new String[]{"com.foo.bar.net.C", "com.foo.baz.net.D"}, "com.foo.*.net");
+        assertFound(new String[]{"com.foo.bar.net.C", "com.foo.baz.net.D", "com.foo.net.E", "com.foo.x.y.net.F"}, "com.foo.**.net");
+        assertFound(new String[]{"com.foo.A", "com.foo.bar.B", "com.foo.bar.net.C", "com.foo.baz.net.D", "com.foo.net.E", "com.foo.x.y.net.F"}, "com.foo.**");
+        assertFound(NAMES, "**");
+        assertFound(new String[]{"com.foo.bar.net.C", "com.foo.baz.net.D", "com.foo.net.E", "com.foo.x.y.net.F"}, "**.net");
+        assertFound(new String[]{"com.foo.A", "com.foobar.G", "org.H"}, "com.foo", "org", "com.foobar");
+        assertFound(new String[]{"com.foo.bar.B", "com.foo.bar.net.C", "com.foo.baz.net.D", "com.foo.net.E"}, "com.foo.*", "com.foo.*.net");
+        assertFound(new String[0], "com.missing.**");
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReflectorCacheTest {
+    @Test
+    public void concurrentLookupsResolveOnce() throws Exception {
+        var cache = new Reflector.Cache<String, Object>();
+        var resolves = new AtomicInteger();
+        var threads = 8;
+        var start = new CountDownLatch(1);
+        var inside = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            var futures = new ArrayList<Future<Object>>();
+            for (var i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("key", key -> {
+                        resolves.incrementAndGet();
+                        inside.countDown();
+                        // keep the resolution in flight while the others arrive
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return new Object();
+                    });
+                }));
+            }
+            start.countDown();
+            assertTrue(inside.await(5, TimeUnit.SECONDS));
+            var first = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (var future : futures) {
+                assertSame(first, future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, resolves.get());
+        var stats = cache.getStats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(threads - 1, stats.getHits());
+    }
+
+    @Test
+    public void negativeEntriesAreEvictedOldestFirst() {
+        var cache = new Reflector.Cache<String, Object>();
+        cache.setLimits(4, 2);
+        var resolves = new AtomicInteger();
+        Reflector.Resolver<String, Object> missing = key -> {
+            resolves.incrementAndGet();
+            throw new ClassNotFoundException(key);
+        };
+        assertNull(cache.get("a", missing));
+        assertNull(cache.get("b", missing));
+        assertTrue(cache.isNegative("a"));
+        assertNull(cache.get("c", missing));
+        assertFalse(cache.isNegative("a"));
+        assertTrue(cache.isNegative("b"));
+        assertTrue(cache.isNegative("c"));
+
+        // a remembered miss is answered without resolving, an evicted one is resolved again
+        assertNull(cache.get("c", missing));
+        assertEquals(3, resolves.get());
+        assertNull(cache.get("a", missing));
+        assertEquals(4, resolves.get());
+
+        cache.setLimits(4, 0);
+        assertFalse(cache.isNegative("c"));
+        assertFalse(cache.isNegative("a"));
+    }
+
+    @Test
+    public void failedResolutionIsRetried() {
+        var cache = new Reflector.Cache<String, Object>();
+        var attempts = new AtomicInteger();
+        var value = new Object();
+        Reflector.Resolver<String, Object> flaky = key -> {
+            if (attempts.incrementAndGet() == 1) throw new IllegalStateException("transient");
+            return value;
+        };
+        var e = assertThrows(IllegalStateException.class, () -> cache.get("key", flaky));
+        assertEquals("transient", e.getMessage());
+        assertSame(value, cache.get("key", flaky));
+        assertSame(value, cache.get("key", flaky));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void errorsAreNotCachedAsMisses() {
+        var cache = new Reflector.Cache<String, Object>();
+        var attempts = new AtomicInteger();
+        Reflector.Resolver<String, Object> broken = key -> {
+            attempts.incrementAndGet();
+            throw new NoClassDefFoundError(key);
+        };
+        assertThrows(NoClassDefFoundError.class, () -> cache.get("key", broken));
+        assertThrows(NoClassDefFoundError.class, () -> cache.get("key", broken));
+        assertEquals(2, attempts.get());
+    }
+
+    private static int pinned(Reflector.Cache<?, ?> cache) throws ReflectiveOperationException {
+        var field = Reflector.Cache.class.getDeclaredField("clock");
+        field.setAccessible(true);
+        var count = 0;
+        for (var entry : (Object[]) field.get(cache)) {
+            if (entry != null) ++count;
+        }
+        return count;
+    }
+
+    @Test
+    public void putReplacesItsStrongSlot() throws ReflectiveOperationException {
+        var cache = new Reflector.Cache<String, Object>();
+        cache.setLimits(4, 4);
+        var value = new Object();
+        cache.put("a", value);
+        cache.put("a", value);
+        cache.put("a", new Object());
+        var last = new Object();
+        cache.put("a", last);
+        assertEquals(1, pinned(cache));
+        assertSame(last, cache.peek("a"));
+        cache.put("b", new Object());
+        assertEquals(2, pinned(cache));
+    }
+
+    @Test
+    public void clearedEntriesDropTheirKeys() throws Exception {
+        var cache = new Reflector.Cache<String, Object>();
+        cache.setLimits(0, 4);
+        cache.put("a", new Object());
+        // keys of cleared values may hold classes, they must not stay in the map
+        for (var i = 0; i < 50 && cache.getStats().getWeakClears() == 0; ++i) {
+            System.gc();
+            Thread.sleep(10);
+            assertNull(cache.peek("b"));
+        }
+        assertEquals(1, cache.getStats().getWeakClears());
+        var field = Reflector.Cache.class.getDeclaredField("map");
+        field.setAccessible(true);
+        assertTrue(((Map<?, ?>) field.get(cache)).isEmpty());
+    }
+}
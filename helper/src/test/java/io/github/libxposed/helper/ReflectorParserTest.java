@@ -0,0 +1,164 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+public class ReflectorParserTest {
+    @SuppressWarnings("unused")
+    static class Outer {
+        static class Inner {
+            long[] values;
+            Outer.Inner next;
+
+            Inner() {
+            }
+
+            Inner(int size, String[] names, Map.Entry<String, Integer>[] entries) {
+            }
+
+            Inner[] split(int parts, Outer.Inner other) {
+                return null;
+            }
+        }
+
+        Object self() {
+            return this;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    static class Covariant extends Outer {
+        @Override
+        Covariant self() {
+            return this;
+        }
+    }
+
+    private static Reflector newReflector() {
+        return new Reflector(ReflectorParserTest.class.getClassLoader());
+    }
+
+    @Test
+    public void loadsJavaTypeNames() throws ClassNotFoundException {
+        var reflector = newReflector();
+        assertSame(String.class, reflector.loadClass("java.lang.String"));
+        assertSame(int.class, reflector.loadClass("int"));
+        assertSame(int[][].class, reflector.loadClass("int[][]"));
+        assertSame(String[].class, reflector.loadClass("java.lang.String[]"));
+        // nested classes may be written with dots, both as is and as array components
+        assertSame(Map.Entry.class, reflector.loadClass("java.util.Map.Entry"));
+        assertSame(Map.Entry[].class, reflector.loadClass("java.util.Map.Entry[]"));
+        assertSame(Outer.Inner.class, reflector.loadClass("io.github.libxposed.helper.ReflectorParserTest.Outer.Inner"));
+        assertSame(Outer.Inner.class, reflector.loadClass("io.github.libxposed.helper.ReflectorParserTest$Outer$Inner"));
+    }
+
+    @Test
+    public void loadsDescriptors() throws ClassNotFoundException {
+        var reflector = newReflector();
+        assertSame(String.class, reflector.loadClass("Ljava/lang/String;"));
+        assertSame(long.class, reflector.loadClass("J"));
+        assertSame(long[].class, reflector.loadClass("[J"));
+        assertSame(String[][].class, reflector.loadClass("[[Ljava/lang/String;"));
+        assertSame(String[].class, reflector.loadClass("[Ljava.lang.String;"));
+        assertSame(Map.Entry.class, reflector.loadClass("Ljava/util/Map$Entry;"));
+        assertSame(Map.Entry[].class, reflector.loadClass("[Ljava/util/Map.Entry;"));
+    }
+
+    @Test
+    public void missingTypesReportTheirName() {
+        var reflector = newReflector();
+        var e = assertThrows(ClassNotFoundException.class, () -> reflector.loadClass("a.b.Missing"));
+        assertEquals("a.b.Missing", e.getMessage());
+        // a remembered miss fails the same way
+        e = assertThrows(ClassNotFoundException.class, () -> reflector.loadClass("a.b.Missing"));
+        assertEquals("a.b.Missing", e.getMessage());
+        e = assertThrows(ClassNotFoundException.class, () -> reflector.loadMethod("a.b.Missing.run()"));
+        assertEquals("a.b.Missing", e.getMessage());
+    }
+
+    @Test
+    public void loadsMethods() throws ReflectiveOperationException {
+        var reflector = newReflector();
+        var split = Outer.Inner.class.getDeclaredMethod("split", int.class, Outer.Inner.class);
+        var owner = "io.github.libxposed.helper.ReflectorParserTest.Outer.Inner";
+        var descriptor = "Lio/github/libxposed/helper/ReflectorParserTest$Outer$Inner;";
+        assertEquals(split, reflector.loadMethod(owner + ".split(int, " + owner + ")"));
+        assertEquals(split, reflector.loadMethod(owner + "[] " + owner + ".split(int," + owner + ")"));
+        assertEquals(split, reflector.loadMethod(descriptor + "->split(I" + descriptor + ")"));
+        assertEquals(split, reflector.loadMethod(descriptor + "->split(I" + descriptor + ")[" + descriptor));
+        assertEquals(split, reflector.loadMethod(Reflector.getSignature(split)));
+        assertEquals(Map.Entry.class.getMethod("getKey"), reflector.loadMethod("java.util.Map.Entry.getKey()"));
+        assertEquals(List.class.getMethod("toArray", Object[].class), reflector.loadMethod("Ljava/util/List;->toArray([Ljava/lang/Object;)[Ljava/lang/Object;"));
+        assertThrows(NoSuchMethodException.class, () -> reflector.loadMethod(descriptor + "->split(I" + descriptor + ")V"));
+        assertThrows(NoSuchMethodException.class, () -> reflector.loadMethod("void " + owner + ".split(int, " + owner + ")"));
+        assertThrows(NoSuchMethodException.class, () -> reflector.loadMethod(owner + ".split"));
+    }
+
+    @Test
+    public void loadsConstructors() throws ReflectiveOperationException {
+        var reflector = newReflector();
+        var constructor = Outer.Inner.class.getDeclaredConstructor(int.class, String[].class, Map.Entry[].class);
+        var owner = "io.github.libxposed.helper.ReflectorParserTest.Outer.Inner";
+        var descriptor = "Lio/github/libxposed/helper/ReflectorParserTest$Outer$Inner;";
+        assertEquals(constructor, reflector.loadConstructor(owner + "(int, java.lang.String[], java.util.Map.Entry[])"));
+        assertEquals(constructor, reflector.loadConstructor(descriptor + "-><init>(I[Ljava/lang/String;[Ljava/util/Map$Entry;)V"));
+        assertEquals(constructor, reflector.loadConstructor(Reflector.getSignature(constructor)));
+        assertEquals(Outer.Inner.class.getDeclaredConstructor(), reflector.loadConstructor(descriptor + "-><init>()"));
+        assertThrows(NoSuchMethodException.class, () -> reflector.loadConstructor(descriptor + "-><init>()I"));
+        assertThrows(NoSuchMethodException.class, () -> reflector.loadConstructor(descriptor + "->make()V"));
+    }
+
+    @Test
+    public void loadsFields() throws ReflectiveOperationException {
+        var reflector = newReflector();
+        var values = Outer.Inner.class.getDeclaredField("values");
+        var next = Outer.Inner.class.getDeclaredField("next");
+        var owner = "io.github.libxposed.helper.ReflectorParserTest.Outer.Inner";
+        var descriptor = "Lio/github/libxposed/helper/ReflectorParserTest$Outer$Inner;";
+        assertEquals(values, reflector.loadField(owner + ".values"));
+        assertEquals(values, reflector.loadField("long[] " + owner + ".values"));
+        assertEquals(values, reflector.loadField(descriptor + "->values:[J"));
+        assertEquals(next, reflector.loadField(descriptor + "->next"));
+        assertEquals(next, reflector.loadField(owner + " " + owner + ".next"));
+        assertEquals(next, reflector.loadField(Reflector.getSignature(next)));
+        assertThrows(NoSuchFieldException.class, () -> reflector.loadField(descriptor + "->values:[I"));
+        assertThrows(NoSuchFieldException.class, () -> reflector.loadField("int " + owner + ".next"));
+        assertThrows(NoSuchFieldException.class, () -> reflector.loadField(owner + ".missing"));
+    }
+
+    @Test
+    public void memoHitsAreCounted() throws ReflectiveOperationException {
+        var reflector = newReflector();
+        reflector.loadClass("java.lang.String");
+        reflector.loadMethod("java.lang.String.length()");
+        var before = reflector.getStats();
+        reflector.loadClass("java.lang.String");
+        reflector.loadMethod("java.lang.String.length()");
+        assertThrows(ClassNotFoundException.class, () -> reflector.loadClass("a.b.Missing"));
+        assertThrows(ClassNotFoundException.class, () -> reflector.loadClass("a.b.Missing"));
+        var after = reflector.getStats();
+        assertEquals(before.getClassCache().getHits() + 1, after.getClassCache().getHits());
+        assertEquals(before.getMethodCache().getHits() + 1, after.getMethodCache().getHits());
+        assertEquals(before.getMethodCache().getMisses(), after.getMethodCache().getMisses());
+        assertEquals(before.getClassCache().getNegativeHits() + 1, after.getClassCache().getNegativeHits());
+    }
+
+    @Test
+    public void batchesUseTheGivenTables() throws ReflectiveOperationException {
+        var reflector = newReflector();
+        var tables = new MemberTables<Method>(Class::getDeclaredMethods);
+        var owner = "io.github.libxposed.helper.ReflectorParserTest.Covariant";
+        var methods = reflector.loadMethods(List.of(owner + ".self()"), tables);
+        // the covariant override wins over its bridge, as with getDeclaredMethod
+        var self = Covariant.class.getDeclaredMethod("self");
+        assertEquals(List.of(self), methods);
+        assertEquals(2, tables.get(Covariant.class).get("self", 0).size());
+    }
+}
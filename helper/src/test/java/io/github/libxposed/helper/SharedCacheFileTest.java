@@ -0,0 +1,49 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+public class SharedCacheFileTest {
+    private static byte[] readAll(InputStream in) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var buf = new byte[16];
+        int n;
+        while ((n = in.read(buf)) > 0) bytes.write(buf, 0, n);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void sharesOneLockPerProcess() throws IOException {
+        var dir = Files.createTempDirectory("cache").toFile();
+        var path = new File(dir, "cache");
+        // the second builder used to hit an overlapping lock on its own channel
+        try (var first = SharedCacheFile.openShared(path);
+             var second = SharedCacheFile.openShared(new File(dir, "./cache"))) {
+            assertFalse(first.isExclusive());
+            assertFalse(second.isExclusive());
+            assertNull(first.openInputStream());
+        }
+        try (var writer = SharedCacheFile.openShared(path)) {
+            writer.upgrade();
+            assertTrue(writer.isExclusive());
+            writer.publish(new byte[]{1, 2, 3});
+        }
+        try (var reader = SharedCacheFile.openShared(path); var in = reader.openInputStream()) {
+            assertTrue(in.markSupported());
+            in.mark(Integer.MAX_VALUE);
+            assertArrayEquals(new byte[]{1, 2, 3}, readAll(in));
+            in.reset();
+            assertArrayEquals(new byte[]{1, 2, 3}, readAll(in));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+
+public class SourcePathsTest {
+    private static boolean isSamePaths(String[] a, String[] b) throws ReflectiveOperationException {
+        Method method = HookBuilderImpl.class.getDeclaredMethod("isSamePaths", String[].class, String[].class);
+        method.setAccessible(true);
+        return (boolean) method.invoke(null, a, b);
+    }
+
+    @Test
+    public void linkedPathsAreTheSameFile() throws IOException, ReflectiveOperationException {
+        var dir = Files.createTempDirectory("app").toFile();
+        var apk = new File(dir, "base.apk");
+        assertTrue(apk.createNewFile());
+        var link = new File(dir, "link.apk");
+        Files.createSymbolicLink(link.toPath(), apk.toPath());
+        var split = new File(dir, "split.apk");
+        assertTrue(split.createNewFile());
+        assertTrue(isSamePaths(new String[]{apk.getPath()}, new String[]{link.getPath()}));
+        assertTrue(isSamePaths(new String[]{apk.getPath(), split.getPath()}, new String[]{link.getPath(), split.getPath()}));
+        assertFalse(isSamePaths(new String[]{apk.getPath()}, new String[]{split.getPath()}));
+        assertFalse(isSamePaths(new String[]{apk.getPath()}, new String[]{apk.getPath(), split.getPath()}));
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.libxposed.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+public class StringMatchTest {
+    private static Object call(String name, Object... args) throws ReflectiveOperationException {
+        for (Method method : HookBuilderImpl.class.getDeclaredMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == args.length) {
+                method.setAccessible(true);
+                return method.invoke(null, args);
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static boolean wildcard(String pattern, String value) throws ReflectiveOperationException {
+        return (boolean) call("matchesWildcard", pattern, value);
+    }
+
+    @Test
+    public void memberNamesMatchPlainWildcards() throws ReflectiveOperationException {
+        assertTrue(wildcard("get*", "getValue"));
+        assertTrue(wildcard("get*", "get"));
+        assertTrue(wildcard("*Value", "getValue"));
+        assertTrue(wildcard("g*t*e", "getValue"));
+        assertTrue(wildcard("**", "anything"));
+        assertTrue(wildcard("on*Click*", "onItemClickListener"));
+        assertTrue(wildcard("run", "run"));
+        assertFalse(wildcard("run", "runs"));
+        assertFalse(wildcard("get*", "isValue"));
+        assertFalse(wildcard("*Value", "getValues"));
+        assertFalse(wildcard("", "a"));
+    }
+
+    @Test
+    public void findsDexStringsByPrefixes() throws ReflectiveOperationException {
+        var strings = new String[]{"Landroid/app/Activity;", "Lcom/a/B;", "Lcom/a/C;", "Lcom/b/D;", "Lorg/E;", "value"};
+        assertArrayEquals(new Object[]{1, 2, 4}, box((int[]) call("findPrefixes", strings, new String[]{"Lcom/a/", "Lorg/"})));
+        assertArrayEquals(new Object[]{}, box((int[]) call("findPrefixes", strings, new String[]{"Lnet/"})));
+        assertArrayEquals(new Object[]{0, 1, 2, 3, 4, 5}, box((int[]) call("findPrefixes", strings, new String[]{""})));
+    }
+
+    @Test
+    public void mapsFoundStringsBackToIndices() throws ReflectiveOperationException {
+        var strings = new String[]{"a.B", "a.b.C", "a.c.D", "b.E", "c"};
+        var names = (String[]) call("getDottedNames", (Object) strings);
+        var found = ((PackageIndex) call("newPackageIndex", (Object) names)).find(PackageIndex.parseGlobs("a.*", ""));
+        var indices = (int[]) call("indicesOf", names, found);
+        assertEquals(3, indices.length);
+        assertArrayEquals(new Object[]{1, 2, 4}, box(indices));
+    }
+
+    @Test
+    public void packageGlobsMatchClassRefs() throws ReflectiveOperationException {
+        // sorted as dex strings are, descriptors sort apart from dotted constants
+        var strings = new String[]{"La/B;", "La/b/C;", "Lb/E;", "[La/B;", "a.B", "a.b.D", "value"};
+        var names = (String[]) call("getDottedNames", (Object) strings);
+        assertArrayEquals(new Object[]{"a.B", "a.b.C", "b.E", "[La/B;", "a.B", "a.b.D", "value"}, names);
+        var index = (PackageIndex) call("newPackageIndex", (Object) names);
+        assertArrayEquals(new Object[]{0, 4}, box((int[]) call("indicesOf", names, index.find(PackageIndex.parseGlobs("a")))));
+        assertArrayEquals(new Object[]{1, 5}, box((int[]) call("indicesOf", names, index.find(PackageIndex.parseGlobs("a.b")))));
+        assertArrayEquals(new Object[]{0, 1, 4, 5}, box((int[]) call("indicesOf", names, index.find(PackageIndex.parseGlobs("a.**")))));
+    }
+
+    private static Object[] box(int[] values) {
+        return Arrays.stream(values).boxed().toArray();
+    }
+}